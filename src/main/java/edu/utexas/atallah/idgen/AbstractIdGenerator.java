@@ -0,0 +1,321 @@
+package edu.utexas.atallah.idgen;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ *  AbstractIdGenerator
+ *
+ *  Common base of the generators that own a node id's serial space.  Subclasses implement
+ *  {@link #reserve(int, long)}, which claims a run of serials within one tick (an epoch second by default)
+ *  and returns the first of them packed with its tick exactly as they appear below the node id field of an
+ *  id; everything else (single ids, bulk fills and ranges) is derived from it here.  The widths of the
+ *  fields come from the generator's {@link IdLayout} and are copied into final fields of the generator.
+ *
+ *  A generator starts out with the serial space of its construction tick exhausted, so its first id is
+ *  issued in the following tick.  This prevents overlaps in case of a node bounce without putting a
+ *  sleep in the constructor.
+ *
+ *  When the serial space of a tick is exhausted, a generator normally waits for the clock to reach the next
+ *  tick.  A generator with a lookahead of <code>maxLead</code> ticks instead borrows serials from future ticks
+ *  as long as it stays no more than <code>maxLead</code> ticks ahead of the clock, and only waits beyond that;
+ *  it catches up with the clock once the load drops.  Since a previous incarnation of the node may likewise
+ *  have issued ids up to <code>maxLead</code> ticks ahead, the construction tick exhausted initially is moved
+ *  ahead by the same amount.
+ *
+ *  A generator with a {@link PersistentMark} additionally has each epoch second cleared by the mark before
+ *  issuing ids from it.  Every second a previous incarnation issued from (borrowed ones included) was cleared
+ *  the same way, so a generator whose mark recovered a record starts out with everything before the mark's
+ *  resume time exhausted instead of its construction tick: it issues ids at once if the mark has passed, and
+ *  waits only for the clock to reach the resume time after a restart within it or after the clock has
+ *  stepped back.
+ */
+abstract class AbstractIdGenerator implements IdGenerator {
+    static final long WAIT_FOREVER = Long.MAX_VALUE;
+    static final long NONE = -1;                    // Result of a reserve that timed out
+    private static final long DISABLED = Long.MIN_VALUE;
+    private static final Logger log = LoggerFactory.getLogger(AbstractIdGenerator.class);
+
+    private final long nodeId;
+    private final IdLayout layout;
+    final long idPrefix;
+    final int serialBits;
+    final long maxSerial;
+    final long serialsPerTick;
+    private final long maxTime;
+    private final long tickMillis;
+    private final long epochMillis;
+    final long maxLead;
+    private final TimeSource clock;
+    private final PersistentMark mark;              // null if nothing is persisted
+    // Ticks up to here may be issued without advancing the mark (or DISABLED, to fail every reservation)
+    private final AtomicLong markedTick;
+    private volatile String disabled;               // Why the generator was disabled, null while it is not
+    final long initialTick;                         // Exhausted when the generator starts
+    // The provider the node id was claimed from, so that its claim lives at least as long as the generator
+    private final NodeIdProvider nodeIdProvider;
+
+    AbstractIdGenerator(long nodeId, NodeIdProvider nodeIdProvider, IdLayout layout, TimeSource clock, long maxLead,
+                        PersistentMark mark) {
+        if (nodeId < 0 || nodeId > layout.maxNodeId()) {
+            throw new IllegalArgumentException(String.format("Invalid node id %d for %s", nodeId, layout));
+        }
+        if (maxLead < 0) {
+            throw new IllegalArgumentException(String.format("Invalid lookahead of %d ticks", maxLead));
+        }
+        this.nodeId = nodeId;
+        this.nodeIdProvider = nodeIdProvider;
+        this.layout = layout;
+        this.idPrefix = layout.encode(nodeId, 0, 0);
+        this.serialBits = layout.serialBits();
+        this.maxSerial = layout.maxSerial();
+        this.serialsPerTick = layout.serialsPerTick();
+        this.maxTime = layout.maxTime();
+        this.tickMillis = layout.tickMillis();
+        this.epochMillis = layout.epochMillis();
+        this.maxLead = maxLead;
+        this.clock = clock;
+        this.mark = mark;
+        this.markedTick = new AtomicLong(mark == null ? Long.MAX_VALUE : -1);
+        checkTime(currentTick());
+        this.initialTick = initialTick();
+    }
+
+    /**
+     * Claims up to <code>count</code> consecutive serials of a single tick and returns the first of
+     * them packed with its tick.  The number actually claimed is given by {@link #granted}.
+     * @param timeoutNanos How long to wait for the clock when the serial space is exhausted, or
+     *                     {@link #WAIT_FOREVER}
+     * @return The first serial packed with its tick, or {@link #NONE} if the timeout expired first
+     */
+    abstract long reserve(int count, long timeoutNanos);
+
+    /**
+     * @return The number of serials claimed by a {@link #reserve} for <code>count</code> that returned
+     *         <code>first</code>
+     */
+    abstract int granted(long first, int count);
+
+    /**
+     * Gives the unused tail of a reservation back to the generator, if the generator supports it.
+     * @return Whether the ids from <code>from</code> to the end of <code>range</code> may be issued again
+     */
+    boolean release(IdRange range, long from) {
+        return false;
+    }
+
+    /**
+     * {@link #reserve}s serials and, with a persistent mark, has their second cleared before they are issued.
+     * Disabling the generator lowers the ticks that may be issued without a check below every tick, so that
+     * this costs the id path nothing but the one comparison it makes anyway.  The mark shares the timeout
+     * with the reservation; if it cannot clear the second in time the serials are given back where possible.
+     */
+    private long claim(int count, long timeoutNanos) {
+        // Only a finite, nonzero timeout needs the time spent reserving
+        long start = timeoutNanos == WAIT_FOREVER || timeoutNanos == 0 ? 0 : System.nanoTime();
+        long first = reserve(count, timeoutNanos);
+        if (first != NONE && first >>> serialBits > markedTick.get()) {
+            long remaining = start == 0 ? timeoutNanos : timeoutNanos - (System.nanoTime() - start);
+            if (!checkpoint(first >>> serialBits, remaining)) {
+                release(new IdRange(idPrefix | first, granted(first, count)), idPrefix | first);
+                return NONE;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * @return Whether ids may be issued from <code>tick</code>, false if the mark timed out
+     */
+    private boolean checkpoint(long tick, long timeoutNanos) {
+        String reason = disabled;
+        if (reason != null) {
+            throw new IllegalStateException(String.format("Generator for node %d is disabled: %s", nodeId, reason));
+        }
+        if (mark != null) {
+            long second = mark.advance(Math.floorDiv(layout.tickStartMillis(tick), 1000), timeoutNanos);
+            if (second == PersistentMark.NONE) {
+                return false;
+            }
+            long lastTick = Math.floorDiv((second + 1) * 1000 - epochMillis, tickMillis) - 1;
+            markedTick.accumulateAndGet(lastTick,
+                    (current, last) -> current == DISABLED ? current : Math.max(current, last));
+        }
+        return true;
+    }
+
+    @Override
+    public void disable(String reason) {
+        disabled = reason;
+        markedTick.set(DISABLED);
+    }
+
+    boolean isDisabled() {
+        return disabled != null;
+    }
+
+    TimeSource clock() {
+        return clock;
+    }
+
+    @Override
+    public long getId() {
+        return idPrefix | claim(1, WAIT_FOREVER);
+    }
+
+    @Override
+    public long getId(long timeout, TimeUnit unit) {
+        long first = claim(1, unit.toNanos(timeout));
+        return first == NONE ? NO_ID : idPrefix | first;
+    }
+
+    /**
+     * {@inheritDoc}  Each run of ids is claimed from the current tick with a single atomic update, so the
+     * per-id cost is little more than an array store; a batch that crosses the end of a tick's serial space
+     * is split across ticks.
+     */
+    @Override
+    public void getIds(long[] dst, int off, int len) {
+        IdGenerator.checkBounds(dst, off, len);
+        while (len > 0) {
+            long first = claim(len, WAIT_FOREVER);
+            int granted = granted(first, len);
+            for (int i = 0; i < granted; i++) {
+                dst[off++] = idPrefix | (first + i);
+            }
+            len -= granted;
+        }
+    }
+
+    @Override
+    public int tryGetIds(long[] dst, int off, int len) {
+        IdGenerator.checkBounds(dst, off, len);
+        int start = off;
+        while (len > 0) {
+            long first = claim(len, 0);
+            if (first == NONE) {
+                break;
+            }
+            int granted = granted(first, len);
+            for (int i = 0; i < granted; i++) {
+                dst[off++] = idPrefix | (first + i);
+            }
+            len -= granted;
+        }
+        return off - start;
+    }
+
+    @Override
+    public IdRange reserveRange(int count) {
+        return reserveRange(count, WAIT_FOREVER);
+    }
+
+    /**
+     * @return The reserved range, or <code>null</code> if the timeout expired first
+     */
+    IdRange reserveRange(int count, long timeoutNanos) {
+        if (count < 1) {
+            throw new IllegalArgumentException(String.format("Invalid range size %d", count));
+        }
+        long first = claim(count, timeoutNanos);
+        return first == NONE ? null : new IdRange(idPrefix | first, granted(first, count));
+    }
+
+    @Override
+    public long nanosUntilNextTick() {
+        long now = clock.currentTimeMillis();
+        long nextTick = Math.floorDiv(now - epochMillis, tickMillis) + 1;
+        return TimeUnit.MILLISECONDS.toNanos(epochMillis + nextTick * tickMillis - now);
+    }
+
+    @Override
+    public long nanosUntilReady() {
+        // A generator may borrow up to maxLead ticks ahead of the clock, its first tick included
+        long delay = epochMillis + (initialTick + 1 - maxLead) * tickMillis - clock.currentTimeMillis();
+        return delay <= 0 ? 0 : TimeUnit.MILLISECONDS.toNanos(delay);
+    }
+
+    /**
+     * @return The time in nsec until a caller whose non-blocking request came back empty should try again: the
+     *         next tick, or later if <code>generator</code> cannot issue before then anyway (e.g. because it is
+     *         resuming from a mark)
+     */
+    static long nanosUntilRetry(IdGenerator generator) {
+        return Math.max(generator.nanosUntilNextTick(), generator.nanosUntilReady());
+    }
+
+    @Override
+    public long nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public IdLayout layout() {
+        return layout;
+    }
+
+    /**
+     * Fails unless the ticks since the epoch fit the time field of the layout.
+     */
+    void checkTime(long tick) {
+        if (tick < 0 || tick > maxTime) {
+            throw new IllegalStateException(String.format("Tick %d is outside the time field of %s", tick, layout));
+        }
+    }
+
+    /**
+     * @return The tick whose serial space is exhausted when the generator starts
+     */
+    private long initialTick() {
+        if (mark != null && mark.recovered() != PersistentMark.NONE) {
+            // Everything before the first tick the previous incarnation cannot have issued from
+            return Math.floorDiv(mark.resumeMillis() - epochMillis, tickMillis) - 1;
+        }
+        return currentTick() + maxLead;
+    }
+
+    long currentTick() {
+        return Math.floorDiv(clock.currentTimeMillis() - epochMillis, tickMillis);
+    }
+
+    /**
+     * Parks until the clock has reached the start of <code>tick</code> (if it has not already), but no longer
+     * than <code>timeoutNanos</code>.  No lock or monitor is held while parked, so waiting virtual threads
+     * unmount from their carriers, and the generator is the park blocker shown in thread dumps.  Callers
+     * re-check their state after every return, so an early wakeup only costs another round.
+     * @return The remaining timeout, or a negative value if it expired before the clock reached the tick
+     */
+    long awaitTick(long tick, long timeoutNanos, String banner) {
+        long delay = epochMillis + tick * tickMillis - clock.currentTimeMillis();
+        if (delay <= 0) {
+            return timeoutNanos;
+        }
+        if (timeoutNanos <= 0) {
+            return -1;
+        }
+        long parkNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(delay), timeoutNanos);
+        long start = System.nanoTime();
+        park(this, parkNanos, banner);
+        if (timeoutNanos == WAIT_FOREVER) {
+            return WAIT_FOREVER;
+        }
+        return Math.max(timeoutNanos - (System.nanoTime() - start), 0);
+    }
+
+    /**
+     * Parks the calling thread for up to <code>delay</code> nanoseconds without holding any monitor.
+     */
+    static void park(Object blocker, long delay, String banner) {
+        log.debug(String.format("Parking for %d nsec (%s)", delay, banner));
+        LockSupport.parkNanos(blocker, delay);
+        if (Thread.interrupted()) {
+            throw new IllegalStateException(
+                    String.format("Interrupted during sleep [%s]",banner));
+        }
+    }
+}
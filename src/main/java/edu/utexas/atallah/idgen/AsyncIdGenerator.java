@@ -0,0 +1,193 @@
+package edu.utexas.atallah.idgen;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ *
+ *  AsyncIdGenerator
+ *
+ *  Non-blocking access to an {@link IdGenerator} for event loops and other callers that must never sleep.
+ *  Requests that can be served from the serial space of the current tick complete immediately on the calling
+ *  thread.  Otherwise the request is queued and all queued requests are completed in bulk, in arrival order,
+ *  by a single scheduler task that runs when the next tick opens.  No thread is parked per waiter.
+ *
+ *  Queued futures are completed on the scheduler thread, so callers should use the <code>...Async</code>
+ *  variants of the <code>CompletableFuture</code> methods for anything but trivial follow-up work.
+ */
+public class AsyncIdGenerator implements AutoCloseable {
+    private final IdGenerator generator;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private volatile boolean closed;
+
+    /**
+     * Creates an asynchronous front end with its own scheduler thread, which is stopped by {@link #close()}.
+     */
+    public AsyncIdGenerator(IdGenerator generator) {
+        this(generator, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "idgen-async");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    /**
+     * Creates an asynchronous front end that runs its drain task on the given scheduler.
+     */
+    public AsyncIdGenerator(IdGenerator generator, ScheduledExecutorService scheduler) {
+        this(generator, scheduler, false);
+    }
+
+    private AsyncIdGenerator(IdGenerator generator, ScheduledExecutorService scheduler, boolean ownsScheduler) {
+        this.generator = generator;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    /**
+     * <code>getIdAsync</code> returns a future for the next available globally unique id, which is already
+     * complete unless the serial space of the current tick is exhausted.
+     */
+    public CompletableFuture<Long> getIdAsync() {
+        if (waiters.isEmpty() && !closed) {
+            long id;
+            try {
+                id = generator.tryGetId();
+            } catch (RuntimeException e) {
+                return failed(e);
+            }
+            if (id != IdGenerator.NO_ID) {
+                return CompletableFuture.completedFuture(id);
+            }
+        }
+        return getIdsAsync(1).thenApply(ids -> ids[0]);
+    }
+
+    /**
+     * <code>getIdsAsync</code> returns a future for <code>count</code> globally unique ids.  As many ids as the
+     * current tick allows are issued immediately; the future completes once the remainder has been issued at
+     * the start of the following tick(s).
+     */
+    public CompletableFuture<long[]> getIdsAsync(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException(String.format("Invalid id count %d", count));
+        }
+        if (closed) {
+            return failed(new IllegalStateException("AsyncIdGenerator is closed"));
+        }
+        long[] ids = new long[count];
+        // Only serve immediately when nobody is queued, so that waiters are not starved by new arrivals
+        int filled;
+        try {
+            filled = waiters.isEmpty() ? generator.tryGetIds(ids, 0, count) : 0;
+        } catch (RuntimeException e) {
+            // E.g. a disabled generator, which fails the future just as it would in a drain
+            return failed(e);
+        }
+        if (filled == count) {
+            return CompletableFuture.completedFuture(ids);
+        }
+        Waiter waiter = new Waiter(ids, filled);
+        waiters.add(waiter);
+        if (closed) {
+            // Closed since the check above, possibly after close() failed the waiters queued until then
+            failAll(new IllegalStateException("AsyncIdGenerator is closed"));
+            return waiter.future;
+        }
+        scheduleDrain();
+        return waiter.future;
+    }
+
+    /**
+     * @return The number of requests waiting for the next tick
+     */
+    public int pending() {
+        return waiters.size();
+    }
+
+    /**
+     * Fails all pending requests and stops the scheduler thread if this instance created it.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (ownsScheduler) {
+            scheduler.shutdownNow();
+        }
+        failAll(new IllegalStateException("AsyncIdGenerator is closed"));
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                long delay = AbstractIdGenerator.nanosUntilRetry(generator);
+                scheduler.schedule(this::drain, delay, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                drainScheduled.set(false);
+                failAll(e);
+            }
+        }
+    }
+
+    private void drain() {
+        Waiter waiter;
+        while (!closed && (waiter = waiters.peek()) != null) {
+            if (waiter.future.isDone()) {
+                // Cancelled by the caller
+                waiters.poll();
+                continue;
+            }
+            try {
+                waiter.filled += generator.tryGetIds(waiter.ids, waiter.filled, waiter.ids.length - waiter.filled);
+            } catch (RuntimeException e) {
+                waiters.poll();
+                waiter.future.completeExceptionally(e);
+                continue;
+            }
+            if (waiter.filled < waiter.ids.length) {
+                // Out of serials again, continue at the next tick
+                break;
+            }
+            waiters.poll();
+            waiter.future.complete(waiter.ids);
+        }
+        drainScheduled.set(false);
+        // Requests queued while this drain was finishing did not schedule one of their own
+        if (!closed && !waiters.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    private void failAll(Throwable cause) {
+        Waiter waiter;
+        while ((waiter = waiters.poll()) != null) {
+            waiter.future.completeExceptionally(cause);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable cause) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+
+    private static final class Waiter {
+        final long[] ids;
+        int filled;                                 // Only accessed by the scheduler thread after queueing
+        final CompletableFuture<long[]> future = new CompletableFuture<>();
+
+        Waiter(long[] ids, int filled) {
+            this.ids = ids;
+            this.filled = filled;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package edu.utexas.atallah.idgen;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ *  CasIdGenerator
+ *
+ *  The default generator.  Its mutable state is a single atomic word holding the tick (epoch second by
+ *  default) of the last issued id and the next serial number, packed exactly as they appear below the node id
+ *  field of an id.  Callers advance it with compare-and-set, so no thread ever blocks on a monitor to obtain
+ *  an id, and ids are ordered across all threads.  Every packed value at or above the state is unissued, so
+ *  a CAS from a given value is always safe and the state may even step back when a lessee returns the unused
+ *  tail of its block.
+ *
+ *  Each tick starts a fresh serial counter, so all serials of a tick are usable.  Issuing the last serial of
+ *  a tick carries into the next tick's field with a serial of zero, which callers wait out until the clock
+ *  actually reaches that tick, or at least comes within the lookahead of it (see {@link AbstractIdGenerator}).
+ */
+public class CasIdGenerator extends AbstractIdGenerator {
+    // (Tick of last issued ID << serialBits) | next serial number to be assigned
+    private final AtomicLong state;
+
+    CasIdGenerator(long nodeId, NodeIdProvider nodeIdProvider, IdLayout layout, TimeSource clock, long maxLead,
+                   PersistentMark mark) {
+        super(nodeId, nodeIdProvider, layout, clock, maxLead, mark);
+        this.state = new AtomicLong((initialTick + 1) << serialBits);
+    }
+
+    @Override
+    long reserve(int count, long timeoutNanos) {
+        while (true) {
+            long current = state.get();
+            long lastTick = current >>> serialBits;
+            long currTick = currentTick();
+            long next;
+            if (currTick > lastTick) {
+                checkTime(currTick);
+                next = currTick << serialBits;
+            } else if ((current & maxSerial) == 0 && lastTick - currTick > maxLead) {
+                // The serial space of the previous tick is exhausted and lastTick is too far ahead to borrow from
+                timeoutNanos = awaitTick(lastTick - maxLead, timeoutNanos, "overflow");
+                if (timeoutNanos < 0) {
+                    return NONE;
+                }
+                continue;
+            } else {
+                // Never move the packed state backwards, even if the wall clock does
+                checkTime(lastTick);
+                next = current;
+            }
+            if (state.compareAndSet(current, next + granted(next, count))) {
+                return next;
+            }
+        }
+    }
+
+    @Override
+    int granted(long first, int count) {
+        return (int) Math.min(count, serialsPerTick - (first & maxSerial));
+    }
+
+    /**
+     * Gives the unused tail of a reservation back to the shared state.  This only succeeds while no other
+     * reservation has been made since, i.e. while the shared state still points just past the range.
+     */
+    @Override
+    boolean release(IdRange range, long from) {
+        return from <= range.last() && state.compareAndSet((range.last() + 1) ^ idPrefix, from ^ idPrefix);
+    }
+}
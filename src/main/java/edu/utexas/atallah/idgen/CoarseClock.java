@@ -0,0 +1,67 @@
+package edu.utexas.atallah.idgen;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ *  CoarseClock
+ *
+ *  A {@link TimeSource} that reads the system clock on a background ticker thread a few times per tick and
+ *  publishes it in a volatile field, so reading the time on the id path is a plain volatile load instead of a
+ *  call to <code>System.currentTimeMillis()</code>.
+ *
+ *  The published time lags the system clock by up to one period and never moves backwards.  A lagging clock
+ *  cannot cause duplicates: a generator's state never moves back, so ids issued after a tick boundary that the
+ *  ticker has not yet published are still taken from the generator's latest tick, or waited for as on any
+ *  overflow.  The period should be well below the tick of the layout in use, since a tick only opens once the
+ *  ticker has published it.
+ */
+public class CoarseClock implements TimeSource, AutoCloseable {
+    public static final long DEFAULT_PERIOD_MILLIS = 100;
+
+    private final ScheduledExecutorService ticker;
+    private volatile long now = System.currentTimeMillis();
+
+    /**
+     * Creates a clock updated every {@link #DEFAULT_PERIOD_MILLIS} msec, which suits layouts with one second
+     * ticks.
+     */
+    public CoarseClock() {
+        this(DEFAULT_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public CoarseClock(long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid ticker period %d %s", period, unit));
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "idgen-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, period, period, unit);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    /**
+     * Stops the ticker thread.  The clock keeps returning the last time it published.
+     */
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+
+    private void tick() {
+        // Only this thread writes, and a system clock step backwards is not passed on
+        long current = System.currentTimeMillis();
+        if (current > now) {
+            now = current;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package edu.utexas.atallah.idgen;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ *  DirectoryNodeIdProvider
+ *
+ *  Allocates node ids among the JVMs of one host through lock files in a shared local directory, without any
+ *  coordination service.  Node id <code>n</code> belongs to whoever holds an exclusive lock on the file
+ *  <code>node-n.lock</code>; a claim tries the files in order with <code>FileChannel.tryLock</code>, which never
+ *  blocks, and keeps the first one it gets.  The lock is held by the operating system on behalf of the
+ *  process, so it needs no renewal and is released when the process exits, however it exits.
+ *
+ *  Each claim allocates another node id, which stays claimed until {@link #close()} or the process exits.  A
+ *  provider that becomes unreachable without being closed may have its lock files closed by the garbage
+ *  collector on some JDKs (11 and later) but not on Java 8, so a generator built from the provider keeps it
+ *  reachable and the claim lasts at least as long as the generator.  The lock files only coordinate the JVMs that
+ *  share the directory, so when several hosts issue ids each should be given its own range of node ids to
+ *  allocate from.
+ */
+public class DirectoryNodeIdProvider implements NodeIdProvider, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(DirectoryNodeIdProvider.class);
+
+    private final Path directory;
+    private final long firstNodeId;
+    private final long lastNodeId;
+    private final List<FileChannel> claimed = new ArrayList<>();
+
+    /**
+     * Creates a provider that allocates from all node ids of the layout.
+     */
+    public DirectoryNodeIdProvider(Path directory) {
+        this(directory, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a provider that allocates from the node ids <code>firstNodeId</code> through
+     * <code>lastNodeId</code>, as far as they fit the layout.
+     */
+    public DirectoryNodeIdProvider(Path directory, long firstNodeId, long lastNodeId) {
+        if (directory == null) {
+            throw new IllegalArgumentException("Directory must not be null");
+        }
+        if (firstNodeId < 0 || lastNodeId < firstNodeId) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid node id range [%d, %d]", firstNodeId, lastNodeId));
+        }
+        this.directory = directory;
+        this.firstNodeId = firstNodeId;
+        this.lastNodeId = lastNodeId;
+    }
+
+    @Override
+    public synchronized long nodeId(IdLayout layout) {
+        long last = Math.min(lastNodeId, layout.maxNodeId());
+        try {
+            Files.createDirectories(directory);
+            for (long nodeId = firstNodeId; nodeId <= last; nodeId++) {
+                FileChannel channel = FileChannel.open(directory.resolve(String.format("node-%d.lock", nodeId)),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                if (tryLock(channel)) {
+                    claimed.add(channel);
+                    log.info("Claimed node id {} in {}", nodeId, directory);
+                    return nodeId;
+                }
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Cannot claim a node id in %s", directory), e);
+        }
+        throw new IllegalStateException(
+                String.format("All node ids from %d to %d in %s are taken", firstNodeId, last, directory));
+    }
+
+    /**
+     * Releases all node ids claimed through this provider.  Generators using them must no longer be used.
+     */
+    @Override
+    public synchronized void close() {
+        for (FileChannel channel : claimed) {
+            try {
+                // Closing the channel releases its lock
+                channel.close();
+            } catch (IOException e) {
+                log.warn(String.format("Cannot release node id lock in %s", directory), e);
+            }
+        }
+        claimed.clear();
+    }
+
+    private static boolean tryLock(FileChannel channel) throws IOException {
+        try {
+            FileLock lock = channel.tryLock();
+            return lock != null;
+        } catch (OverlappingFileLockException e) {
+            // Held by another channel of this JVM
+            return false;
+        }
+    }
+}
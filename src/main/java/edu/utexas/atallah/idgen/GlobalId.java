@@ -4,6 +4,10 @@ package edu.utexas.atallah.idgen;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
 /**
  *
  *  GlobalId
@@ -26,8 +30,8 @@ import org.slf4j.LoggerFactory;
  * 1) We can guarantee that the returned ID is unique because no more than 2**17 IDs
  *    will be issued by each node each second and they will be issued in serial fashion
  *    within that second.  If a node fails and restarts at any time, it is guaranteed that
- *    at least one second will pass so that ids which have never been issued before will
- *    be used (since SecondsSinceEpoch will be different).
+ *    it will not issue ids from the second it restarted in, so that ids which have never
+ *    been issued before will be used (since SecondsSinceEpoch will be different).
  * 2) Lack of a persistence layer helps this solution run at a high rate of speed and unit
  *    tests ensure that the single node performance is at least 100K operations per second.
  * 3) Intrinsic properties are used to help guarantee correctness.  Because the IDs issued
@@ -35,9 +39,12 @@ import org.slf4j.LoggerFactory;
  *    lower 53 bits are unique within one node.  Because the SerialNum is monotonically
  *    increasing within each epoch second, we can guarantee that the unique ids are too.
  *    a) Crashes and Restarts
- *       When a node crashes the initialization code will ensure that it waits one
- *       second before coming into service.  This ensures that it will not be assigning
- *       any unique ids from the last batch it was handing out before the crash.
+ *       When a node crashes the initialization code will ensure that it waits until the
+ *       second it started in is over before coming into service.  This ensures that it
+ *       will not be assigning any unique ids from the last batch it was handing out before
+ *       the crash.  With a high-water mark file (see {@link #HIGH_WATER_MARK_PROPERTY}) the
+ *       node also records each second before issuing ids from it and resumes after the
+ *       recorded second, which covers restarts after the clock has stepped back.
  *    b) System Failure and Restart
  *       This is handled in the same way as single node failures.  Because the seconds
  *       since the epoch value is guaranteed to have increased by 1 second old identifiers
@@ -45,42 +52,95 @@ import org.slf4j.LoggerFactory;
  *    c) Software Defects
  *       Having proper tests is the first line of defense here, but one of the biggest
  *       defects that could occur would be during configuration if two nodes have the
- *       same node id.  One solution to that would be to use any number of techniques to
- *       have nodes broadcast their id and see if anyone else has it before assuming it's
- *       free.
+ *       same node id.  GlobalId does not detect that by itself; callers that want it start
+ *       a detector for the default generator, e.g.
+ *       <code>new NodeIdConflictDetector(GlobalId.generator(), bind, peers, 1, TimeUnit.SECONDS)</code>.
+ *       Each node then broadcasts its id in a UDP heartbeat, and a node that hears its own id
+ *       from another instance disables its generator rather than issue colliding ids.
+ *    d) Wall Clock Steps
+ *       IDs are never issued from an earlier second than before, even if the wall clock
+ *       steps back.  The default generator reads a {@link MonotonicClock}, which slows down
+ *       until the wall clock has caught up instead of stepping back with it, so a step does
+ *       not stall getId for the size of the step either.
+ * 4) Instances
+ *    GlobalId is a static facade over a default {@link IdGenerator} for this node.  Independent
+ *    generators with their own node ids, clocks and issuance strategies can be created with
+ *    {@link IdGenerator#builder()}; see {@link CasIdGenerator} for how the default one issues IDs
+ *    without taking a lock.
  */
 public class GlobalId {
-    private static final long NODE_ID_BITS = 10;
-    private static final long SERIAL_NUMBER_BITS = 17;
-    private static final long MAX_SERIAL_NUMBER = (1<<SERIAL_NUMBER_BITS)-1;
-    private static long ONE_SECOND = 1000;
     public static final long DEFAULT_NODE_ID = 1023;
 
-    private static int nextSerialNumber = 0;        // Next serial number to be assigned (within the current second)
-    private static long lastIntervalStart = 0;      // Time at which last one second interval started (msec)
-    private static long lastIdTimestamp;            // Time at which last ID was issued
-    private static long nodeId;
+    /**
+     * System property naming a {@link HighWaterMark} file for the default generator.
+     */
+    public static final String HIGH_WATER_MARK_PROPERTY = "idgen.highWaterMark";
+
+    /**
+     * System property naming a directory from which the default generator claims its node id with a
+     * {@link DirectoryNodeIdProvider}, instead of using {@link #DEFAULT_NODE_ID}.
+     */
+    public static final String NODE_ID_DIRECTORY_PROPERTY = "idgen.nodeIdDirectory";
 
     private static final Logger log = LoggerFactory.getLogger(GlobalId.class);
 
+    /**
+     * Holds the default generator, so that it is created exactly once, by the first caller that needs it, and
+     * read without any synchronization afterwards.  The class initializer only constructs the generator; any
+     * startup wait is paid by the caller in {@link #init()} or in the generator itself, outside the
+     * initialization lock, so that waiting virtual threads are not pinned to their carriers.
+     */
+    private static final class Holder {
+        // Kept for the life of the class, so that a claimed node id is never released while ids are issued
+        static final NodeIdProvider NODE_ID_PROVIDER = createNodeIdProvider();
+        static final IdGenerator GENERATOR = start();
+    }
+
+    /**
+     * <code>init</code> brings the default generator into service ahead of the first call to {@link #getId()}
+     * so that the call does not pay the startup wait.  Calling it is optional, and calling it again has no
+     * effect.
+     */
     public static void init() {
-        nodeId = nodeId();
+        IdGenerator generator = Holder.GENERATOR;
         /*
-         *  Ensure that each node waits at least one second before issuing new ids to prevent overlaps
-         *  in case of a node bounce.
+         *  Ensure that each node waits until the second it came up in is over before issuing new ids to
+         *  prevent overlaps in case of a node bounce.  The generator already refuses to issue ids from
+         *  that second (or from any second recorded in its high-water mark), so this only waits for the
+         *  next boundary rather than a full second.  An interrupt ends the wait early and stays set.
          */
-        sleep(1000, "initial startup");
-        log.info("GlobalId manager for node {} initialized", nodeId());
+        long delay = generator.nanosUntilReady();
+        long deadline = System.nanoTime() + delay;
+        while (delay > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(GlobalId.class, delay);
+            delay = deadline - System.nanoTime();
+        }
+    }
+
+    private static IdGenerator start() {
+        IdGenerator generator = createGenerator();
+        log.info("GlobalId manager for node {} initialized", generator.nodeId());
+        return generator;
     }
 
-    private static void sleep(long delay, String banner) {
-        try {
-            log.debug(String.format("Sleeping for %d msec (%s)", delay, banner));
-            Thread.sleep(delay);
-        } catch (InterruptedException e) {
-            throw new IllegalStateException(
-                    String.format("Interrupted during sleep [%s]",banner));
+    private static NodeIdProvider createNodeIdProvider() {
+        String nodeIdDirectory = System.getProperty(NODE_ID_DIRECTORY_PROPERTY);
+        return nodeIdDirectory == null ?
+                NodeIdProvider.of(DEFAULT_NODE_ID) : new DirectoryNodeIdProvider(Paths.get(nodeIdDirectory));
+    }
+
+    private static IdGenerator createGenerator() {
+        IdGeneratorBuilder builder = IdGenerator.builder()
+                .nodeId(Holder.NODE_ID_PROVIDER)
+                .clock(new MonotonicClock());
+        if (highWaterMark() != null) {
+            builder.highWaterMark(Paths.get(highWaterMark()));
         }
+        return builder.build();
+    }
+
+    private static String highWaterMark() {
+        return System.getProperty(HIGH_WATER_MARK_PROPERTY);
     }
 
     /**
@@ -90,28 +150,64 @@ public class GlobalId {
      * @return The next globally unique id as a 64 bit integer
      */
 
-    public static synchronized long getId() {
-        long currTimestamp = timestamp();
-        if (nextSerialNumber >= MAX_SERIAL_NUMBER) {
-            long sleepDelay = ONE_SECOND - (currTimestamp - lastIntervalStart);
-            sleep(sleepDelay, "overflow");
-            currTimestamp = timestamp();
-            lastIntervalStart = currTimestamp;
-            nextSerialNumber = 0;
-        } else if (currTimestamp - lastIdTimestamp > ONE_SECOND) {
-            lastIntervalStart = currTimestamp;
-            nextSerialNumber = 0;
-        }
-        lastIdTimestamp = currTimestamp;
-        return nodeId << (64-(NODE_ID_BITS+1)) |
-                (currTimestamp/ONE_SECOND) << SERIAL_NUMBER_BITS |
-                nextSerialNumber++;
+    public static long getId() {
+        return Holder.GENERATOR.getId();
     }
 
+    /**
+     * <code>tryGetId</code> returns the next available globally unique id, or {@link IdGenerator#NO_ID} instead
+     * of sleeping when the serial space of the current second is exhausted.
+     */
+    public static long tryGetId() {
+        return Holder.GENERATOR.tryGetId();
+    }
+
+    /**
+     * <code>getId</code> returns the next available globally unique id, sleeping no longer than the given timeout
+     * when the serial space of the current second is exhausted.
+     * @return The next globally unique id, or {@link IdGenerator#NO_ID} if the timeout expired first
+     */
+    public static long getId(long timeout, TimeUnit unit) {
+        return Holder.GENERATOR.getId(timeout, unit);
+    }
+
+    /**
+     * <code>getIds</code> fills <code>dst[off]</code> through <code>dst[off+len-1]</code> with globally unique
+     * ids, claiming each run of ids from the current second with a single atomic update.
+     * @see IdGenerator#getIds(long[], int, int)
+     */
+    public static void getIds(long[] dst, int off, int len) {
+        Holder.GENERATOR.getIds(dst, off, len);
+    }
+
+    /**
+     * <code>reserveRange</code> reserves up to <code>count</code> consecutive globally unique ids, all within
+     * one epoch second.
+     * @see IdGenerator#reserveRange(int)
+     */
+    public static IdRange reserveRange(int count) {
+        return Holder.GENERATOR.reserveRange(count);
+    }
+
+    /**
+     * @return The generator behind the static methods of this class
+     */
+    public static IdGenerator generator() {
+        return Holder.GENERATOR;
+    }
+
+    /**
+     * @return The node id of the default generator, {@link #DEFAULT_NODE_ID} unless
+     *         {@link #NODE_ID_DIRECTORY_PROPERTY} is set
+     */
     public static long nodeId() {
-        // Hardcoded for proof of concept
-        return DEFAULT_NODE_ID;
+        return Holder.GENERATOR.nodeId();
     }
+
+    /**
+     * @deprecated The default generator reads its own {@link TimeSource}; use a {@link TimeSource} instead
+     */
+    @Deprecated
     public static long timestamp() {
         return System.currentTimeMillis();
     }
@@ -0,0 +1,176 @@
+package edu.utexas.atallah.idgen;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *
+ *  HighWaterMark
+ *
+ *  A small file recording the latest epoch second a generator has issued ids from, so that a restarted node
+ *  knows which seconds it must not issue from again even if its clock now reads earlier (after a clock step,
+ *  or with a lookahead), and so needs no startup sleep.  The file holds the second as a single 8 byte value.
+ *
+ *  Writes happen on a background thread as the generator enters a new second: entering second <code>s</code>
+ *  only requires the write of <code>s - 1</code> to be durable.  While ids are issued every second the id path
+ *  therefore never waits for the disk as long as each write completes within a second.  The first id after an
+ *  idle gap does wait for one write (of its own second, as <code>s - 1</code> was never requested), bounded by
+ *  the caller's timeout.  After a crash the node may therefore have issued ids up to
+ *  one second past the recorded mark, which {@link #resumeMillis()} accounts for.
+ *
+ *  A failed write fails every later attempt to enter a new second with an IllegalStateException rather than
+ *  issuing ids that a restart could not protect.
+ */
+class HighWaterMark implements PersistentMark {
+    private static final Logger log = LoggerFactory.getLogger(HighWaterMark.class);
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long recovered;
+    private final ExecutorService writer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+    private long requested;                         // Guarded by lock
+    private long durable;                           // Guarded by lock
+    private IOException failure;                    // Guarded by lock
+
+    HighWaterMark(Path file) {
+        this.file = file;
+        try {
+            this.channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.recovered = read();
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Cannot open high-water mark %s", file), e);
+        }
+        this.requested = recovered;
+        this.durable = recovered;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "idgen-hwm");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("High-water mark {} recovered at second {}", file, recovered);
+    }
+
+    /**
+     * @return The second recorded by the previous incarnation, or {@link #NONE} for a new file
+     */
+    @Override
+    public long recovered() {
+        return recovered;
+    }
+
+    /**
+     * {@inheritDoc}  This is 0 for a new file.
+     */
+    @Override
+    public long resumeMillis() {
+        // The previous incarnation may have issued ids from the second after the recorded one
+        return recovered == NONE ? 0 : (recovered + 2) * 1000;
+    }
+
+    /**
+     * Records that ids are about to be issued from <code>second</code>, waiting only for the previous second
+     * to be durable.
+     * @return <code>second</code>, as entering the next one has to be recorded again, or {@link #NONE} if the
+     *         timeout expired first
+     */
+    @Override
+    public long advance(long second, long timeoutNanos) {
+        lock.lock();
+        try {
+            if (second > requested) {
+                requested = second;
+                writer.execute(this::write);
+            }
+            while (true) {
+                if (failure != null) {
+                    throw new IllegalStateException(String.format("Cannot write high-water mark %s", file), failure);
+                }
+                if (durable >= second - 1) {
+                    return second;
+                }
+                if (timeoutNanos <= 0) {
+                    return NONE;
+                }
+                timeoutNanos = written.awaitNanos(timeoutNanos);
+            }
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(
+                    String.format("Interrupted during sleep [high-water mark %d]", second));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The latest second known to be durable
+     */
+    long durable() {
+        lock.lock();
+        try {
+            return durable;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long read() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // Keep reading until the value is complete or the file ends
+        }
+        if (buffer.hasRemaining()) {
+            return NONE;
+        }
+        buffer.flip();
+        return buffer.getLong();
+    }
+
+    private void write() {
+        long second;
+        lock.lock();
+        try {
+            second = requested;
+            if (second <= durable) {
+                // Already covered by an earlier write
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        IOException error = null;
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(0, second);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, buffer.position());
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            log.error(String.format("Cannot write high-water mark %s", file), e);
+            error = e;
+        }
+        lock.lock();
+        try {
+            if (error != null) {
+                failure = error;
+            } else {
+                durable = Math.max(durable, second);
+            }
+            written.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
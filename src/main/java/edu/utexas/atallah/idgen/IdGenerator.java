@@ -0,0 +1,141 @@
+package edu.utexas.atallah.idgen;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ *  IdGenerator
+ *
+ *  A source of globally unique ids for one node id.  Each instance carries its own node id, id layout,
+ *  clock and issuance state, so independent generators (e.g. one per shard or tenant, each with its own
+ *  node id) can run side by side in one JVM without sharing a monitor or any other state.  Instances are
+ *  created with {@link #builder()}, which also selects the issuance strategy; {@link GlobalId} is a static
+ *  facade over a default instance.
+ *
+ *  All implementations are thread safe.  No two generators may use the same node id at the same time.
+ */
+public interface IdGenerator {
+    /**
+     * Returned instead of an id when none could be issued in time.  This is never a valid id: ids of signed
+     * layouts are positive, and layouts whose fields fill all 64 bits never issue from their highest tick (see
+     * {@link IdLayout}).
+     */
+    long NO_ID = -1;
+
+    /**
+     * @return A new builder for configuring and creating a generator
+     */
+    static IdGeneratorBuilder builder() {
+        return new IdGeneratorBuilder();
+    }
+
+    /**
+     * <code>getId</code> returns the next available globally unique id.  When the serial space of the current
+     * tick is exhausted it sleeps until the next tick (no more than 1 sec) and then returns an id.
+     * @return A globally unique id as a 64 bit integer
+     */
+    long getId();
+
+    /**
+     * <code>tryGetId</code> returns the next available globally unique id if one can be issued without waiting,
+     * i.e. unless the serial space of the current tick is exhausted.
+     * @return A globally unique id as a 64 bit integer, or {@link #NO_ID}
+     */
+    default long tryGetId() {
+        return getId(0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * <code>getId</code> returns the next available globally unique id, waiting no longer than the given timeout
+     * when the serial space of the current tick is exhausted.
+     * @return A globally unique id as a 64 bit integer, or {@link #NO_ID} if the timeout expired first
+     */
+    long getId(long timeout, TimeUnit unit);
+
+    /**
+     * <code>getIds</code> fills <code>dst[off]</code> through <code>dst[off+len-1]</code> with globally unique
+     * ids.  The same overflow behavior as {@link #getId()} applies.
+     * @param dst Array receiving the ids
+     * @param off Index of the first id in <code>dst</code>
+     * @param len Number of ids to generate
+     */
+    default void getIds(long[] dst, int off, int len) {
+        checkBounds(dst, off, len);
+        for (int i = off; i < off + len; i++) {
+            dst[i] = getId();
+        }
+    }
+
+    /**
+     * <code>tryGetIds</code> fills as many of <code>dst[off]</code> through <code>dst[off+len-1]</code> with globally
+     * unique ids as can be issued without waiting.
+     * @return The number of ids stored, starting at <code>dst[off]</code>
+     */
+    default int tryGetIds(long[] dst, int off, int len) {
+        checkBounds(dst, off, len);
+        int count = 0;
+        while (count < len) {
+            long id = tryGetId();
+            if (id == NO_ID) {
+                break;
+            }
+            dst[off + count++] = id;
+        }
+        return count;
+    }
+
+    /**
+     * <code>reserveRange</code> reserves up to <code>count</code> consecutive globally unique ids, all within
+     * one tick, and returns them as a compact {@link IdRange}.  Fewer ids are returned when the current
+     * tick's serial space runs out first; the range is never empty.  The same overflow behavior
+     * as {@link #getId()} applies.
+     * @param count Maximum number of ids to reserve (at least 1)
+     * @return The reserved range
+     */
+    IdRange reserveRange(int count);
+
+    /**
+     * <code>release</code> gives back any per-thread state (such as a leased block of serials) held by the
+     * generator for the calling thread.  Generators without per-thread state ignore it.
+     */
+    default void release() {
+    }
+
+    /**
+     * @return The time in nsec until the next tick starts according to the generator's clock, which is when
+     *         callers of {@link #tryGetId()} that ran out of serials should try again
+     */
+    long nanosUntilNextTick();
+
+    /**
+     * @return The time in nsec until the generator can issue its first id, which a new generator (or a
+     *         restarted node) only does once the clock has moved past the tick it was created in, or 0 if it
+     *         already can
+     */
+    default long nanosUntilReady() {
+        return 0;
+    }
+
+    /**
+     * <code>disable</code> makes every later request for ids fail with an IllegalStateException giving the
+     * reason, e.g. because another node was found to be using the same node id.  It cannot be undone.
+     */
+    void disable(String reason);
+
+    /**
+     * @return The node id encoded in every id issued by this generator
+     */
+    long nodeId();
+
+    /**
+     * @return The layout of the ids issued by this generator, which can also decode them
+     */
+    IdLayout layout();
+
+    static void checkBounds(long[] dst, int off, int len) {
+        if (off < 0 || len < 0 || off > dst.length - len) {
+            throw new IndexOutOfBoundsException(
+                    String.format("Range [%d, %d) out of bounds for length %d", off, off + len, dst.length));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package edu.utexas.atallah.idgen;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ *  IdGeneratorBuilder
+ *
+ *  Configures and creates {@link IdGenerator} instances.  The node id must always be given; everything else
+ *  has a default.  By default the generator is a {@link CasIdGenerator}, which orders ids across threads;
+ *  {@link #striped(int)} selects a {@link StripedIdGenerator} and {@link #leasing(int)} puts a
+ *  {@link LeasingIdGenerator} in front of either of them.
+ */
+public class IdGeneratorBuilder {
+    private static final int NOT_SELECTED = -1;
+
+    private NodeIdProvider nodeIdProvider;
+    private IdLayout layout = IdLayout.DEFAULT;
+    private TimeSource clock;                       // null for a new MonotonicClock per generator
+    private long lookaheadMillis;                   // 0 to wait for the clock on overflow
+    private int stripes = NOT_SELECTED;             // NOT_SELECTED for a single shared counter
+    private int leaseBlockSize = NOT_SELECTED;      // NOT_SELECTED for no per-thread leasing
+    private Path markFile;                          // null to persist nothing
+    private long leaseSeconds;                      // 0 for a high-water mark, else a lease of this many seconds
+
+    IdGeneratorBuilder() {
+    }
+
+    /**
+     * @param nodeId The node id encoded in every id (which must fit the layout's node id field), which no other
+     *               generator may use concurrently
+     */
+    public IdGeneratorBuilder nodeId(long nodeId) {
+        return nodeId(NodeIdProvider.of(nodeId));
+    }
+
+    /**
+     * @param provider Supplies the node id when the generator is built, e.g. a {@link DirectoryNodeIdProvider}
+     */
+    public IdGeneratorBuilder nodeId(NodeIdProvider provider) {
+        if (provider == null) {
+            throw new IllegalArgumentException("Node id provider must not be null");
+        }
+        this.nodeIdProvider = provider;
+        return this;
+    }
+
+    /**
+     * @param layout Widths of the id fields (defaults to {@link IdLayout#DEFAULT})
+     */
+    public IdGeneratorBuilder layout(IdLayout layout) {
+        if (layout == null) {
+            throw new IllegalArgumentException("Layout must not be null");
+        }
+        this.layout = layout;
+        return this;
+    }
+
+    /**
+     * @param clock Source of the current time (defaults to a new {@link MonotonicClock}, so that a step of the
+     *              wall clock does not stall the generator); see {@link TimeSource} for the trade-offs of the
+     *              built-in ones
+     */
+    public IdGeneratorBuilder clock(TimeSource clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("Clock must not be null");
+        }
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Lets the generator borrow serials from future ticks instead of waiting when the current tick's serials are
+     * exhausted, as long as it stays no more than <code>lookahead</code> ahead of the clock.  Short bursts above
+     * the per-tick capacity then issue ids that are briefly ahead of the clock rather than stalling callers.
+     * A restarted node also waits out the lookahead before issuing ids.  The lookahead is counted in whole ticks
+     * of the layout, rounded up, so e.g. 500 msec on a layout with second ticks allows borrowing one second.
+     * @param lookahead How far ahead of the clock ids may be issued (0 to always wait, the default)
+     */
+    public IdGeneratorBuilder borrowAhead(long lookahead, TimeUnit unit) {
+        if (lookahead < 0) {
+            throw new IllegalArgumentException(String.format("Invalid lookahead %d %s", lookahead, unit));
+        }
+        this.lookaheadMillis = unit.toMillis(lookahead);
+        return this;
+    }
+
+    /**
+     * Selects a {@link StripedIdGenerator} with the given number of stripes (a power of 2, at least 1).
+     */
+    public IdGeneratorBuilder striped(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException(String.format("Invalid stripe count %d", stripes));
+        }
+        this.stripes = stripes;
+        return this;
+    }
+
+    /**
+     * Puts per-thread leasing of blocks of {@link LeasingIdGenerator#DEFAULT_BLOCK_SIZE} serials in front of
+     * the generator.
+     */
+    public IdGeneratorBuilder leasing() {
+        return leasing(LeasingIdGenerator.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Puts per-thread leasing of blocks of <code>blockSize</code> serials (at least 1) in front of the generator.
+     */
+    public IdGeneratorBuilder leasing(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException(String.format("Invalid block size %d", blockSize));
+        }
+        this.leaseBlockSize = blockSize;
+        return this;
+    }
+
+    /**
+     * Persists the latest epoch second ids were issued from in the given file (see {@link HighWaterMark}), so
+     * that a restarted node resumes after it without a startup sleep, even if its clock has stepped back.  The
+     * file must not be shared with any other generator.
+     */
+    public IdGeneratorBuilder highWaterMark(Path file) {
+        return persistTo(file, 0);
+    }
+
+    /**
+     * Leases epoch seconds ahead of the clock in the given memory-mapped file (see {@link LeaseFile}), so
+     * that a restarted node resumes once its clock has passed the lease without a startup sleep, and the file
+     * is only written once per lease.  The file must not be shared with any other generator.
+     * @param lease How far ahead of the clock each extension of the lease reaches (at least 2 sec)
+     */
+    public IdGeneratorBuilder leaseAhead(Path file, long lease, TimeUnit unit) {
+        if (unit.toSeconds(lease) < 2) {
+            throw new IllegalArgumentException(String.format("Invalid lease %d %s", lease, unit));
+        }
+        return persistTo(file, unit.toSeconds(lease));
+    }
+
+    private IdGeneratorBuilder persistTo(Path file, long leaseSeconds) {
+        if (file == null) {
+            throw new IllegalArgumentException("File must not be null");
+        }
+        this.markFile = file;
+        this.leaseSeconds = leaseSeconds;
+        return this;
+    }
+
+    public IdGenerator build() {
+        if (nodeIdProvider == null) {
+            throw new IllegalStateException("A node id must be configured");
+        }
+        long nodeId = nodeIdProvider.nodeId(layout);
+        long maxLead = (lookaheadMillis + layout.tickMillis() - 1) / layout.tickMillis();
+        PersistentMark mark = markFile == null ? null :
+                leaseSeconds == 0 ? new HighWaterMark(markFile) : new LeaseFile(markFile, leaseSeconds);
+        TimeSource clock = this.clock == null ? new MonotonicClock() : this.clock;
+        AbstractIdGenerator generator = stripes == NOT_SELECTED ?
+                new CasIdGenerator(nodeId, nodeIdProvider, layout, clock, maxLead, mark) :
+                new StripedIdGenerator(nodeId, nodeIdProvider, layout, clock, maxLead, mark, stripes);
+        return leaseBlockSize == NOT_SELECTED ? generator : new LeasingIdGenerator(generator, leaseBlockSize);
+    }
+}
@@ -0,0 +1,324 @@
+package edu.utexas.atallah.idgen;
+
+/**
+ *
+ *  IdLayout
+ *
+ *  Describes how the node id, the time since the epoch and the serial number are packed into a 64-bit id:
+ *
+ *      63                                                                     0
+ *      +---+-----------------+----------------------------+--------------------+
+ *      | 0 |  NodeId (node)  |   TicksSinceEpoch (time)   |  SerialNum (serial) |
+ *      +---+-----------------+----------------------------+--------------------+
+ *
+ *  The most significant bit is normally zero so that ids are positive 64-bit integers, which leaves 63 bits to
+ *  share between the three fields.  The {@link #DEFAULT} layout (10 node bits, 36 time bits, 17 serial bits)
+ *  is the one documented on {@link GlobalId}; deployments with fewer nodes can trade node bits for serial bits,
+ *  e.g. 6 node bits and 21 serial bits for 64 nodes issuing up to 2M ids per second each.
+ *
+ *  Time is counted in ticks, which are seconds since Jan 1970 for layouts created with {@link #of}.  Most of the
+ *  roughly 2,000 years covered by its 36 time bits lie in the past or far beyond any deployment, so layouts
+ *  created with {@link #seconds} count seconds since a custom epoch instead and can give the bits saved to the
+ *  serial field: {@link #EPOCH_2020} covers 136 years from 2020 in 32 bits and issues 2M ids per node and
+ *  second.  The layout is not recorded in the ids, so ids issued with one layout must be decoded with the same
+ *  one; ids issued before switching a deployment to a new layout keep decoding with {@link #DEFAULT}.  A custom
+ *  epoch shifts the time field, so the first ids of the new layout may repeat ids issued before the switch:
+ *  a node may only switch when {@link #canSucceed} holds for the old layout and the time of the switch, which
+ *  for {@link #DEFAULT} followed by {@link #EPOCH_2020} is the case from 2023-05-02T11:12:01Z on.
+ *
+ *  Layouts created with {@link #milliseconds} count milliseconds since a custom epoch (like Twitter's Snowflake
+ *  ids, see {@link #SNOWFLAKE}), with a correspondingly smaller serial field per tick.  Running out of serials
+ *  then costs at most about a millisecond of waiting rather than up to a full second, so bursts that
+ *  exceed the per-second budget for a fraction of a second no longer stall every caller.
+ *
+ *  Storage that treats ids as unsigned 64-bit values can use the most significant bit as well: layouts created
+ *  with {@link #unsigned} have 64 bits to share, e.g. one more serial bit in {@link #UNSIGNED}, which doubles the
+ *  ids per node and second of the default layout.  Such ids are negative as Java longs once the node id uses
+ *  the top bit, so they must be ordered with {@link #compare} and printed with {@link #toString(long)} rather
+ *  than with the signed operations.  When the fields fill all 64 bits the highest tick is never used, so that
+ *  {@link IdGenerator#NO_ID} (all bits set) is never issued.
+ *
+ *  Layouts are immutable and validated when created.  All shifts and masks are computed once into final
+ *  fields, so encoding and decoding are a handful of register operations.
+ */
+public final class IdLayout {
+    public static final IdLayout DEFAULT = of(10, 36, 17);
+    /**
+     * Millisecond ticks since 2020-01-01T00:00:00Z in 41 bits (about 69 years), 10 node bits and 12 serial bits
+     * (4096 ids per node per millisecond).
+     */
+    public static final IdLayout SNOWFLAKE = milliseconds(10, 41, 12, 1_577_836_800_000L);
+    /**
+     * Second ticks since 2020-01-01T00:00:00Z in 32 bits (about 136 years), 10 node bits and 21 serial bits
+     * (2M ids per node per second).
+     */
+    public static final IdLayout EPOCH_2020 = seconds(10, 32, 21, 1_577_836_800_000L);
+    /**
+     * The default layout with the sign bit given to the serial field: 10 node bits, 36 time bits and 18 serial
+     * bits (256K ids per node per second), for ids treated as unsigned.
+     */
+    public static final IdLayout UNSIGNED = unsigned(10, 36, 18);
+
+    private static final int AVAILABLE_BITS = 63;
+    private static final int UNSIGNED_BITS = 64;
+
+    private final long tickMillis;
+    private final long epochMillis;
+    private final int nodeBits;
+    private final int timeBits;
+    private final int serialBits;
+    private final int nodeShift;
+    private final long maxNodeId;
+    private final long maxTime;
+    private final long timeMask;
+    private final long maxSerial;
+    private final boolean unsigned;
+
+    private IdLayout(long tickMillis, long epochMillis, int nodeBits, int timeBits, int serialBits, boolean unsigned) {
+        this.tickMillis = tickMillis;
+        this.epochMillis = epochMillis;
+        this.nodeBits = nodeBits;
+        this.timeBits = timeBits;
+        this.serialBits = serialBits;
+        this.nodeShift = timeBits + serialBits;
+        this.maxNodeId = (1L << nodeBits) - 1;
+        this.timeMask = (1L << timeBits) - 1;
+        // With all 64 bits in use, the highest tick would allow an id of all ones, which is NO_ID
+        this.maxTime = nodeBits + timeBits + serialBits == UNSIGNED_BITS ? timeMask - 1 : timeMask;
+        this.maxSerial = (1L << serialBits) - 1;
+        this.unsigned = unsigned;
+    }
+
+    /**
+     * @param nodeBits Width of the node id field (at least 1)
+     * @param timeBits Width of the seconds since Jan 1970 field (at least 1)
+     * @param serialBits Width of the serial number field (1 to 30)
+     * @return A layout with the given field widths, which must not add up to more than 63 bits
+     */
+    public static IdLayout of(int nodeBits, int timeBits, int serialBits) {
+        return create(1000, 0, nodeBits, timeBits, serialBits);
+    }
+
+    /**
+     * @param nodeBits Width of the node id field (at least 1)
+     * @param timeBits Width of the seconds since <code>epochMillis</code> field (at least 1)
+     * @param serialBits Width of the serial number field (1 to 30)
+     * @param epochMillis Start of the time field in msec since Jan 1970, which must not be in the future and
+     *                    must be a whole second, so that every tick is one second of a {@link PersistentMark}
+     * @return A layout with the given field widths, which must not add up to more than 63 bits
+     * @see #canSucceed(IdLayout, long)
+     */
+    public static IdLayout seconds(int nodeBits, int timeBits, int serialBits, long epochMillis) {
+        if (epochMillis % 1000 != 0) {
+            throw new IllegalArgumentException(String.format("Epoch %d is not a whole second", epochMillis));
+        }
+        return create(1000, epochMillis, nodeBits, timeBits, serialBits);
+    }
+
+    /**
+     * @param nodeBits Width of the node id field (at least 1)
+     * @param timeBits Width of the seconds since Jan 1970 field (at least 1)
+     * @param serialBits Width of the serial number field (1 to 30)
+     * @return A layout for unsigned ids with the given field widths, which must not add up to more than 64 bits
+     */
+    public static IdLayout unsigned(int nodeBits, int timeBits, int serialBits) {
+        return create(1000, 0, nodeBits, timeBits, serialBits, true);
+    }
+
+    /**
+     * @param nodeBits Width of the node id field (at least 1)
+     * @param timeBits Width of the milliseconds since <code>epochMillis</code> field (at least 1)
+     * @param serialBits Width of the serial number field, i.e. serials per millisecond (1 to 30)
+     * @param epochMillis Start of the time field in msec since Jan 1970, which must not be in the future
+     * @return A millisecond resolution layout with the given field widths, which must not add up to more than
+     *         63 bits
+     */
+    public static IdLayout milliseconds(int nodeBits, int timeBits, int serialBits, long epochMillis) {
+        return create(1, epochMillis, nodeBits, timeBits, serialBits);
+    }
+
+    private static IdLayout create(long tickMillis, long epochMillis, int nodeBits, int timeBits, int serialBits) {
+        return create(tickMillis, epochMillis, nodeBits, timeBits, serialBits, false);
+    }
+
+    private static IdLayout create(long tickMillis, long epochMillis, int nodeBits, int timeBits, int serialBits,
+                                   boolean unsigned) {
+        int availableBits = unsigned ? UNSIGNED_BITS : AVAILABLE_BITS;
+        if (nodeBits < 1 || timeBits < 1 || serialBits < 1 || serialBits > 30 ||
+                nodeBits + timeBits + serialBits > availableBits) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid layout: %d node bits, %d time bits, %d serial bits (%d bits available)",
+                    nodeBits, timeBits, serialBits, availableBits));
+        }
+        if (epochMillis < 0) {
+            throw new IllegalArgumentException(String.format("Invalid epoch %d", epochMillis));
+        }
+        return new IdLayout(tickMillis, epochMillis, nodeBits, timeBits, serialBits, unsigned);
+    }
+
+    /**
+     * @return The length of one tick of the time field in msec (1000 or 1)
+     */
+    public long tickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * @return The start of the time field in msec since Jan 1970
+     */
+    public long epochMillis() {
+        return epochMillis;
+    }
+
+    public int nodeBits() {
+        return nodeBits;
+    }
+
+    public int timeBits() {
+        return timeBits;
+    }
+
+    public int serialBits() {
+        return serialBits;
+    }
+
+    public long maxNodeId() {
+        return maxNodeId;
+    }
+
+    public long maxTime() {
+        return maxTime;
+    }
+
+    public long maxSerial() {
+        return maxSerial;
+    }
+
+    /**
+     * @return Whether ids of this layout are unsigned, i.e. may use the most significant bit
+     */
+    public boolean isUnsigned() {
+        return unsigned;
+    }
+
+    /**
+     * @return The number of serials available to one node in one tick
+     */
+    public long serialsPerTick() {
+        return maxSerial + 1;
+    }
+
+    /**
+     * @return The tick containing <code>millis</code> (msec since Jan 1970), negative before the epoch
+     */
+    public long tick(long millis) {
+        return Math.floorDiv(millis - epochMillis, tickMillis);
+    }
+
+    /**
+     * @return The start of <code>tick</code> in msec since Jan 1970
+     */
+    public long tickStartMillis(long tick) {
+        return epochMillis + tick * tickMillis;
+    }
+
+    /**
+     * Checks whether a node that issued ids with <code>previous</code> can switch to this layout at
+     * <code>switchMillis</code> without reissuing any of them.  That requires the node id fields of both layouts
+     * to be in the same place, and the first id this layout issues from the tick containing
+     * <code>switchMillis</code> to be greater than any id <code>previous</code> issued up to the end of its own
+     * tick containing <code>switchMillis</code>, i.e. for layouts with second ticks
+     * <code>(switchSecond - epochSecond) &lt;&lt; serialBits &gt; (switchSecond + 1) &lt;&lt;
+     * previous.serialBits</code>.  Ids keep increasing across the switch, and since the time field only grows
+     * they never collide later either.
+     * @return Whether ids of this layout issued from <code>switchMillis</code> on are all greater than the ids of
+     *         <code>previous</code> issued up to then
+     */
+    public boolean canSucceed(IdLayout previous, long switchMillis) {
+        long tick = tick(switchMillis);
+        if (nodeBits != previous.nodeBits || nodeShift != previous.nodeShift || tick < 0 || tick > maxTime) {
+            return false;
+        }
+        long previousTick = Math.min(previous.tick(switchMillis), previous.maxTime);
+        return previousTick < 0 || tick << serialBits > (previousTick << previous.serialBits | previous.maxSerial);
+    }
+
+    /**
+     * @return The id made up of the given fields, each of which must fit its width
+     */
+    public long encode(long nodeId, long time, long serial) {
+        if (nodeId < 0 || nodeId > maxNodeId || time < 0 || time > maxTime || serial < 0 || serial > maxSerial) {
+            throw new IllegalArgumentException(String.format(
+                    "Field out of range for %s: node %d, time %d, serial %d", this, nodeId, time, serial));
+        }
+        return nodeId << nodeShift | time << serialBits | serial;
+    }
+
+    /**
+     * @return The node id field of <code>id</code>
+     */
+    public long nodeId(long id) {
+        return id >>> nodeShift & maxNodeId;
+    }
+
+    /**
+     * @return The time field of <code>id</code>, in ticks since the epoch
+     */
+    public long time(long id) {
+        return id >>> serialBits & timeMask;
+    }
+
+    /**
+     * @return The start of the tick in which <code>id</code> was issued, in msec since Jan 1970
+     */
+    public long timestampMillis(long id) {
+        return tickStartMillis(time(id));
+    }
+
+    /**
+     * @return The serial number field of <code>id</code>
+     */
+    public long serial(long id) {
+        return id & maxSerial;
+    }
+
+    /**
+     * Orders ids of this layout: as unsigned values for an unsigned layout, which keeps ids with the most
+     * significant bit set after those without, and as signed values otherwise.
+     * @return A negative value, zero or a positive value as <code>a</code> is less than, equal to or greater
+     *         than <code>b</code>
+     */
+    public int compare(long a, long b) {
+        return unsigned ? Long.compareUnsigned(a, b) : Long.compare(a, b);
+    }
+
+    /**
+     * @return The decimal representation of <code>id</code>, unsigned for an unsigned layout
+     */
+    public String toString(long id) {
+        return unsigned ? Long.toUnsignedString(id) : Long.toString(id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof IdLayout)) {
+            return false;
+        }
+        IdLayout other = (IdLayout) o;
+        return tickMillis == other.tickMillis && epochMillis == other.epochMillis &&
+                nodeBits == other.nodeBits && timeBits == other.timeBits && serialBits == other.serialBits &&
+                unsigned == other.unsigned;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = Long.hashCode(epochMillis * 31 + tickMillis) * 31 + (nodeBits * 64 + timeBits) * 64 + serialBits;
+        return unsigned ? ~hash : hash;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IdLayout[node=%d, time=%d, serial=%d, tick=%dms, epoch=%d%s]",
+                nodeBits, timeBits, serialBits, tickMillis, epochMillis, unsigned ? ", unsigned" : "");
+    }
+}
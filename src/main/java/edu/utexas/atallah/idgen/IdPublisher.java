@@ -0,0 +1,164 @@
+package edu.utexas.atallah.idgen;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *
+ *  IdPublisher
+ *
+ *  A demand-driven stream of ids from an {@link IdGenerator}, emitted as <code>long[]</code> chunks so that no id
+ *  is boxed.  Subscribers signal demand in chunks with {@link Subscription#request(long)}; each chunk holds up to
+ *  <code>chunkSize</code> ids and never more than the current tick has left, so emissions are paced to the
+ *  generator's per-tick serial budget.  When the budget is used up the subscription simply resumes at the start of
+ *  the next tick the generator can issue from instead of sleeping or retrying.  All signals to a subscriber,
+ *  {@link Subscriber#onSubscribe} included, are delivered on the given scheduler and never concurrently, even
+ *  when the scheduler has several threads.
+ *
+ *  {@link Subscriber} and {@link Subscription} follow the contract of the Reactive Streams interfaces (and of
+ *  <code>java.util.concurrent.Flow</code>, which this Java 8 code base cannot reference), so adapting them
+ *  to either takes a few lines of delegation.
+ */
+public class IdPublisher {
+    private static final Logger log = LoggerFactory.getLogger(IdPublisher.class);
+
+    public interface Subscriber {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(long[] ids);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    public interface Subscription {
+        /**
+         * Allows up to <code>n</code> more chunks to be delivered.
+         */
+        void request(long n);
+
+        void cancel();
+    }
+
+    private final IdGenerator generator;
+    private final ScheduledExecutorService scheduler;
+    private final int chunkSize;
+
+    public IdPublisher(IdGenerator generator, ScheduledExecutorService scheduler, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException(String.format("Invalid chunk size %d", chunkSize));
+        }
+        this.generator = generator;
+        this.scheduler = scheduler;
+        this.chunkSize = chunkSize;
+    }
+
+    public void subscribe(Subscriber subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber must not be null");
+        }
+        new IdSubscription(subscriber).drain();
+    }
+
+    private final class IdSubscription implements Subscription, Runnable {
+        private final Subscriber subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();         // Drain requests, only the first one runs it
+        private final AtomicBoolean tickPending = new AtomicBoolean();  // A drain is scheduled for the next tick
+        // Invalid demand, until onError has delivered it
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private volatile boolean cancelled;
+        private boolean subscribed;                                     // onSubscribe has been delivered
+        private long[] spare;                                           // Unused chunk from an empty attempt
+
+        IdSubscription(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (cancelled) {
+                return;
+            }
+            if (n <= 0) {
+                if (error.compareAndSet(null, new IllegalArgumentException(String.format("Invalid demand %d", n)))) {
+                    cancelled = true;
+                    drain();
+                }
+                return;
+            }
+            demand.accumulateAndGet(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() == 0) {
+                scheduler.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                if (!subscribed) {
+                    subscribed = true;
+                    subscriber.onSubscribe(this);
+                }
+                Throwable invalid = error.getAndSet(null);
+                if (invalid != null) {
+                    subscriber.onError(invalid);
+                }
+                while (!cancelled && demand.get() > 0) {
+                    long[] chunk = spare != null ? spare : new long[chunkSize];
+                    spare = null;
+                    int count;
+                    try {
+                        count = generator.tryGetIds(chunk, 0, chunkSize);
+                    } catch (RuntimeException e) {
+                        cancelled = true;
+                        subscriber.onError(e);
+                        break;
+                    }
+                    if (count == 0) {
+                        spare = chunk;
+                        awaitNextTick();
+                        break;
+                    }
+                    demand.decrementAndGet();
+                    try {
+                        subscriber.onNext(count == chunkSize ? chunk : Arrays.copyOf(chunk, count));
+                    } catch (RuntimeException e) {
+                        log.warn("Cancelling subscription after onNext failure", e);
+                        cancelled = true;
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void awaitNextTick() {
+            if (tickPending.compareAndSet(false, true)) {
+                long delay = AbstractIdGenerator.nanosUntilRetry(generator);
+                scheduler.schedule(() -> {
+                    tickPending.set(false);
+                    drain();
+                }, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package edu.utexas.atallah.idgen;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.stream.LongStream;
+
+/**
+ *
+ *  IdRange
+ *
+ *  A run of consecutive globally unique ids reserved in one step by {@link IdGenerator#reserveRange(int)}.
+ *  All ids of a range share the same tick, so the range is fully described by its first id and
+ *  its size and the ids themselves are never materialized.  Callers that only need the first id and the
+ *  count (e.g. batch inserters) can use {@link #first()} and {@link #size()} directly; others can walk the
+ *  range as a {@link PrimitiveIterator.OfLong} or a {@link LongStream}, neither of which boxes.
+ *
+ *  The iterator position is the only mutable state, so a range should be consumed by one thread.
+ */
+public final class IdRange implements PrimitiveIterator.OfLong {
+    private final long first;
+    private final int size;
+    private int position;           // Index of the next id returned by nextLong()
+
+    IdRange(long first, int size) {
+        this.first = first;
+        this.size = size;
+    }
+
+    /**
+     * @return The first id of the range
+     */
+    public long first() {
+        return first;
+    }
+
+    /**
+     * @return The last id of the range
+     */
+    public long last() {
+        return first + size - 1;
+    }
+
+    /**
+     * @return The number of ids in the range
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The id at <code>index</code> within the range
+     */
+    public long get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(
+                    String.format("Index %d out of bounds for range of size %d", index, size));
+        }
+        return first + index;
+    }
+
+    /**
+     * @return Whether <code>id</code> belongs to this range
+     */
+    public boolean contains(long id) {
+        return id - first >= 0 && id - first < size;
+    }
+
+    /**
+     * @return The number of ids not yet returned by {@link #nextLong()}
+     */
+    public int remaining() {
+        return size - position;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < size;
+    }
+
+    @Override
+    public long nextLong() {
+        if (position >= size) {
+            throw new NoSuchElementException(String.format("All %d ids of the range were returned", size));
+        }
+        return first + position++;
+    }
+
+    /**
+     * @return All ids of the range, independent of the iterator position
+     */
+    public LongStream stream() {
+        return LongStream.range(first, first + size);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IdRange[0x%x..0x%x, size=%d]", first, last(), size);
+    }
+}
@@ -0,0 +1,160 @@
+package edu.utexas.atallah.idgen;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *
+ *  LeaseFile
+ *
+ *  A memory-mapped file holding a lease on future epoch seconds: "ids may be issued from every second up to
+ *  <code>L</code>".  Extending the lease is a single store into the mapping followed by a <code>force</code>,
+ *  and happens once per lease length rather than once per second as with a {@link HighWaterMark}.  Within the
+ *  lease nothing is written at all.  Once the generator enters the second half of the lease it is extended on
+ *  a background thread to <code>lease</code> seconds past the current second, so the id path only waits for
+ *  the disk if a whole half lease passes before that write completes.  The first id after opening the file, or
+ *  after the lease has run out while no ids were issued, waits for one extension, bounded by the caller's
+ *  timeout.
+ *
+ *  After a crash the node resumes as soon as its clock passes the leased second, which with a short lease is
+ *  usually the case by the time it has restarted.  A longer lease means fewer writes but a longer possible
+ *  wait after a restart (or after the clock has stepped back by less than the lease).
+ */
+class LeaseFile implements PersistentMark {
+    private static final Logger log = LoggerFactory.getLogger(LeaseFile.class);
+
+    private final Path file;
+    private final long leaseSeconds;
+    private final MappedByteBuffer mapping;
+    private final long recovered;
+    private final ExecutorService writer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition extended = lock.newCondition();
+    private long leased;                            // Guarded by lock
+    private boolean extending;                      // Guarded by lock
+    private IOException failure;                    // Guarded by lock
+
+    /**
+     * @param leaseSeconds How many seconds past the current one each extension leases (at least 2)
+     */
+    LeaseFile(Path file, long leaseSeconds) {
+        if (leaseSeconds < 2) {
+            throw new IllegalArgumentException(String.format("Invalid lease of %d sec", leaseSeconds));
+        }
+        this.file = file;
+        this.leaseSeconds = leaseSeconds;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean created = channel.size() < Long.BYTES;
+            // The mapping stays valid after the channel is closed
+            this.mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+            this.recovered = created ? NONE : mapping.getLong(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Cannot map lease file %s", file), e);
+        }
+        this.leased = recovered;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "idgen-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Lease file {} recovered with a lease up to second {}", file, recovered);
+    }
+
+    /**
+     * @return The last second leased by the previous incarnation, or {@link #NONE} for a new file
+     */
+    @Override
+    public long recovered() {
+        return recovered;
+    }
+
+    /**
+     * {@inheritDoc}  This is 0 for a new file.
+     */
+    @Override
+    public long resumeMillis() {
+        return recovered == NONE ? 0 : (recovered + 1) * 1000;
+    }
+
+    @Override
+    public long advance(long second, long timeoutNanos) {
+        lock.lock();
+        try {
+            while (true) {
+                if (failure != null) {
+                    throw new IllegalStateException(String.format("Cannot extend lease in %s", file), failure);
+                }
+                // Also after waking up, since an extension that finished may not have reached this second
+                if (!extending && second > leased - leaseSeconds / 2) {
+                    extending = true;
+                    long target = second + leaseSeconds;
+                    writer.execute(() -> extend(target));
+                }
+                if (second <= leased) {
+                    // Come back at the second half of the lease, unless an extension is already under way
+                    return extending ? leased : leased - leaseSeconds / 2;
+                }
+                if (timeoutNanos <= 0) {
+                    return NONE;
+                }
+                timeoutNanos = extended.awaitNanos(timeoutNanos);
+            }
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(
+                    String.format("Interrupted during sleep [lease on second %d]", second));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The last second currently leased
+     */
+    long leased() {
+        lock.lock();
+        try {
+            return leased;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void extend(long target) {
+        IOException error = null;
+        try {
+            mapping.putLong(0, target);
+            mapping.force();
+        } catch (UncheckedIOException e) {
+            error = e.getCause();
+        } catch (RuntimeException e) {
+            error = new IOException(e);
+        }
+        if (error != null) {
+            log.error(String.format("Cannot extend lease in %s", file), error);
+        }
+        lock.lock();
+        try {
+            if (error != null) {
+                failure = error;
+            } else {
+                leased = Math.max(leased, target);
+            }
+            extending = false;
+            extended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package edu.utexas.atallah.idgen;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ *  LeasingIdGenerator
+ *
+ *  A front end to another generator in which each calling thread leases a block of serials (1024 by default)
+ *  for the current tick from the shared state and then hands out ids from that block with no shared writes
+ *  at all.  A thread only goes back to the shared state when its block runs out or when the tick of the
+ *  block is over, so issuance scales with the number of cores.  A block borrowed ahead of the clock (see
+ *  {@link IdGeneratorBuilder#borrowAhead}) is kept until the clock has passed its tick.
+ *
+ *  Ids remain globally unique, but they are only ordered within a thread: two threads holding blocks for
+ *  the same tick interleave freely.  Serials left in a block when its tick rolls over are discarded
+ *  (the shared state has moved past them), while {@link #release()} hands an unused tail back to the shared
+ *  state when no other thread has reserved ids since.
+ */
+public class LeasingIdGenerator implements IdGenerator {
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    private final AbstractIdGenerator shared;
+    private final int blockSize;
+    private final ThreadLocal<Lease> leases = ThreadLocal.withInitial(Lease::new);
+
+    LeasingIdGenerator(AbstractIdGenerator shared, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException(String.format("Invalid block size %d", blockSize));
+        }
+        this.shared = shared;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * <code>getId</code> returns the next id from the calling thread's block, leasing a new block when the
+     * current one is used up or belongs to a tick that has passed.
+     * @return A globally unique id as a 64 bit integer
+     */
+    @Override
+    public long getId() {
+        return getId(AbstractIdGenerator.WAIT_FOREVER);
+    }
+
+    @Override
+    public long getId(long timeout, TimeUnit unit) {
+        return getId(unit.toNanos(timeout));
+    }
+
+    private long getId(long timeoutNanos) {
+        Lease lease = leases.get();
+        IdRange block = lease.block;
+        if (block == null || !block.hasNext() || shared.currentTick() > lease.tick || shared.isDisabled()) {
+            block = shared.reserveRange(blockSize, timeoutNanos);
+            if (block == null) {
+                return NO_ID;
+            }
+            lease.block = block;
+            lease.tick = shared.layout().time(block.first());
+        }
+        return block.nextLong();
+    }
+
+    /**
+     * Ranges bypass the calling thread's block and are reserved from the shared state directly.
+     */
+    @Override
+    public IdRange reserveRange(int count) {
+        return shared.reserveRange(count);
+    }
+
+    /**
+     * <code>release</code> ends the calling thread's lease, returning its unused serials to the shared
+     * state when possible.  Threads that stop issuing ids should call this so the lease is not retained.
+     */
+    @Override
+    public void release() {
+        Lease lease = leases.get();
+        IdRange block = lease.block;
+        if (block != null && block.hasNext()) {
+            shared.release(block, block.first() + (block.size() - block.remaining()));
+        }
+        leases.remove();
+    }
+
+    @Override
+    public void disable(String reason) {
+        shared.disable(reason);
+    }
+
+    @Override
+    public long nanosUntilNextTick() {
+        return shared.nanosUntilNextTick();
+    }
+
+    @Override
+    public long nanosUntilReady() {
+        return shared.nanosUntilReady();
+    }
+
+    @Override
+    public long nodeId() {
+        return shared.nodeId();
+    }
+
+    @Override
+    public IdLayout layout() {
+        return shared.layout();
+    }
+
+    public int blockSize() {
+        return blockSize;
+    }
+
+    private static final class Lease {
+        IdRange block;
+        long tick;
+    }
+}
@@ -0,0 +1,90 @@
+package edu.utexas.atallah.idgen;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ *
+ *  MonotonicClock
+ *
+ *  A {@link TimeSource} that advances with <code>System.nanoTime()</code> from an anchor on the wall clock and
+ *  re-syncs with the wall clock once per re-sync period, so that it never steps backwards:
+ *
+ *      Wall clock ahead     The clock jumps forward to it, as a forward step is harmless.
+ *      Wall clock behind    The clock keeps going at half speed until the wall clock has caught up, instead of
+ *                           stepping back.
+ *
+ *  A generator whose clock stepped back behind the tick it issues from waits for the clock to return to that
+ *  tick on overflow, which after an NTP step of several seconds is a stall of several seconds.  With this clock
+ *  the wait on overflow stays bounded by about two ticks, and it converges back to the wall clock after twice
+ *  the size of the step.  Since a restarted node anchors on the wall clock, it should not be restarted while
+ *  converging from a step larger than its startup delay.
+ *
+ *  The re-sync check on the read path is one volatile read and a comparison; the wall clock is only read when
+ *  a re-sync is due.
+ */
+public class MonotonicClock implements TimeSource {
+    public static final long DEFAULT_RESYNC_MILLIS = 1000;
+
+    private final TimeSource wallClock;
+    private final LongSupplier nanoClock;
+    private final long resyncNanos;
+    private final AtomicReference<Anchor> anchor = new AtomicReference<>();
+
+    public MonotonicClock() {
+        this(DEFAULT_RESYNC_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param resyncPeriod How often the clock is compared with the wall clock
+     */
+    public MonotonicClock(long resyncPeriod, TimeUnit unit) {
+        this(TimeSource.SYSTEM, System::nanoTime, unit.toNanos(resyncPeriod));
+    }
+
+    MonotonicClock(TimeSource wallClock, LongSupplier nanoClock, long resyncNanos) {
+        if (resyncNanos <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid re-sync period %d nsec", resyncNanos));
+        }
+        this.wallClock = wallClock;
+        this.nanoClock = nanoClock;
+        this.resyncNanos = resyncNanos;
+        this.anchor.set(new Anchor(nanoClock.getAsLong(), wallClock.currentTimeMillis(), false));
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        long nanos = nanoClock.getAsLong();
+        Anchor current = anchor.get();
+        if (nanos - current.nanos < resyncNanos) {
+            return current.millisAt(nanos);
+        }
+        return resync(current, nanos);
+    }
+
+    private long resync(Anchor current, long nanos) {
+        long millis = current.millisAt(nanos);
+        long wall = wallClock.currentTimeMillis();
+        Anchor next = wall >= millis ? new Anchor(nanos, wall, false) : new Anchor(nanos, millis, true);
+        // Whoever loses the race reads the winner's anchor, which was taken at about the same time
+        return anchor.compareAndSet(current, next) ? next.millis : anchor.get().millisAt(nanos);
+    }
+
+    private static final class Anchor {
+        final long nanos;
+        final long millis;
+        final boolean slewing;                      // Behind the wall clock, advancing at half speed
+
+        Anchor(long nanos, long millis, boolean slewing) {
+            this.nanos = nanos;
+            this.millis = millis;
+            this.slewing = slewing;
+        }
+
+        long millisAt(long now) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(Math.max(now - nanos, 0));
+            return millis + (slewing ? elapsed / 2 : elapsed);
+        }
+    }
+}
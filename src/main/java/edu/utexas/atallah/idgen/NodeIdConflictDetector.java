@@ -0,0 +1,162 @@
+package edu.utexas.atallah.idgen;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ *  NodeIdConflictDetector
+ *
+ *  Watches for another generator using the same node id, the configuration error the {@link GlobalId} notes
+ *  call out as the biggest risk to uniqueness.  The detector sends a small UDP heartbeat with its generator's
+ *  node id to a set of peers (which may include a broadcast address) at a fixed interval, and listens for the
+ *  heartbeats of others.  A heartbeat carrying the same node id from a different instance
+ *  {@link IdGenerator#disable disables} the generator, so that it fails fast instead of issuing ids that may
+ *  collide.  All of this happens on two background threads; the id path only ever sees the result.
+ *
+ *  A heartbeat is 20 bytes: a magic number, the node id and a random instance id, so that a detector
+ *  recognizes its own heartbeats when they come back to it.
+ */
+public class NodeIdConflictDetector implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(NodeIdConflictDetector.class);
+    private static final int MAGIC = 0x49444731;    // "IDG1"
+    private static final int HEARTBEAT_BYTES = Integer.BYTES + 2 * Long.BYTES;
+    private static final long MIN_BACKOFF_MILLIS = 10;
+    private static final long MAX_BACKOFF_MILLIS = 1000;
+
+    private final IdGenerator generator;
+    private final List<SocketAddress> peers;
+    private final long instanceId = new SecureRandom().nextLong();
+    private final DatagramSocket socket;
+    private final ScheduledExecutorService sender;
+    private final Thread receiver;
+    private volatile SocketAddress conflict;
+
+    /**
+     * Binds the given local address and starts sending heartbeats to the peers every <code>interval</code>.
+     */
+    public NodeIdConflictDetector(IdGenerator generator, InetSocketAddress bind, Collection<InetSocketAddress> peers,
+                                  long interval, TimeUnit unit) {
+        this(generator, bind(bind), peers, interval, unit);
+    }
+
+    NodeIdConflictDetector(IdGenerator generator, DatagramSocket socket, Collection<InetSocketAddress> peers,
+                           long interval, TimeUnit unit) {
+        if (interval <= 0) {
+            socket.close();
+            throw new IllegalArgumentException(String.format("Invalid heartbeat interval %d %s", interval, unit));
+        }
+        this.generator = generator;
+        this.peers = new ArrayList<>(peers);
+        this.socket = socket;
+        this.sender = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "idgen-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.receiver = new Thread(this::receive, "idgen-heartbeat-listener");
+        receiver.setDaemon(true);
+        receiver.start();
+        sender.scheduleAtFixedRate(this::send, 0, interval, unit);
+    }
+
+    private static DatagramSocket bind(InetSocketAddress bind) {
+        try {
+            DatagramSocket socket = new DatagramSocket(bind);
+            socket.setBroadcast(true);
+            return socket;
+        } catch (SocketException e) {
+            throw new IllegalStateException(String.format("Cannot bind heartbeat socket to %s", bind), e);
+        }
+    }
+
+    /**
+     * @return The local address heartbeats are sent from and received on
+     */
+    public InetSocketAddress localAddress() {
+        return (InetSocketAddress) socket.getLocalSocketAddress();
+    }
+
+    /**
+     * @return The address of a node found using the same node id, or null if none has been seen
+     */
+    public SocketAddress conflict() {
+        return conflict;
+    }
+
+    /**
+     * Stops sending and receiving heartbeats.  A generator disabled by a conflict stays disabled.
+     */
+    @Override
+    public void close() {
+        sender.shutdownNow();
+        socket.close();
+    }
+
+    private void send() {
+        ByteBuffer heartbeat = ByteBuffer.allocate(HEARTBEAT_BYTES)
+                .putInt(MAGIC).putLong(generator.nodeId()).putLong(instanceId);
+        for (SocketAddress peer : peers) {
+            try {
+                socket.send(new DatagramPacket(heartbeat.array(), HEARTBEAT_BYTES, peer));
+            } catch (IOException e) {
+                if (socket.isClosed()) {
+                    return;
+                }
+                // A peer that cannot be reached now may be reachable at the next heartbeat
+                log.debug(String.format("Cannot send heartbeat to %s", peer), e);
+            }
+        }
+    }
+
+    private void receive() {
+        DatagramPacket packet = new DatagramPacket(new byte[HEARTBEAT_BYTES], HEARTBEAT_BYTES);
+        long backoffMillis = 0;
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(HEARTBEAT_BYTES);
+                socket.receive(packet);
+                backoffMillis = 0;
+            } catch (IOException e) {
+                if (socket.isClosed()) {
+                    return;
+                }
+                log.warn("Cannot receive heartbeat", e);
+                // Back off exponentially so that a persistent error does not spin this thread
+                backoffMillis = Math.min(Math.max(2 * backoffMillis, MIN_BACKOFF_MILLIS), MAX_BACKOFF_MILLIS);
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                continue;
+            }
+            ByteBuffer heartbeat = ByteBuffer.wrap(packet.getData(), 0, packet.getLength());
+            if (packet.getLength() != HEARTBEAT_BYTES || heartbeat.getInt() != MAGIC) {
+                continue;
+            }
+            long nodeId = heartbeat.getLong();
+            long instance = heartbeat.getLong();
+            if (nodeId == generator.nodeId() && instance != instanceId && conflict == null) {
+                conflict = packet.getSocketAddress();
+                log.error("Node id {} is also in use at {}, disabling its generator", nodeId, conflict);
+                generator.disable(String.format("Node id %d is also in use at %s", nodeId, conflict));
+            }
+        }
+    }
+}
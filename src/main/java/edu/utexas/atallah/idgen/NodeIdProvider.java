@@ -0,0 +1,27 @@
+package edu.utexas.atallah.idgen;
+
+/**
+ *
+ *  NodeIdProvider
+ *
+ *  Supplies the node id of a generator when it is built (see {@link IdGeneratorBuilder#nodeId(NodeIdProvider)}),
+ *  so that deployments can choose how node ids are allocated instead of configuring one per JVM by hand.
+ *  Whatever the allocation scheme, no two generators may use the same node id concurrently.
+ *
+ *  @see DirectoryNodeIdProvider
+ */
+@FunctionalInterface
+public interface NodeIdProvider {
+    /**
+     * @return A node id within <code>[0, layout.maxNodeId()]</code> that no other running generator uses
+     * @throws IllegalStateException if no node id is available
+     */
+    long nodeId(IdLayout layout);
+
+    /**
+     * @return A provider that always supplies the given node id
+     */
+    static NodeIdProvider of(long nodeId) {
+        return layout -> nodeId;
+    }
+}
@@ -0,0 +1,41 @@
+package edu.utexas.atallah.idgen;
+
+/**
+ *
+ *  PersistentMark
+ *
+ *  A durable record of the epoch seconds a generator may have issued ids from, which lets a restarted node
+ *  resume right after them instead of sleeping at startup, even if its clock has stepped back in between.
+ *  A generator calls {@link #advance(long, long)} before issuing ids from a second it has not been cleared for,
+ *  so an implementation only costs the id path what it spends in those calls, and no more than the caller's
+ *  timeout.
+ *
+ *  @see HighWaterMark
+ *  @see LeaseFile
+ */
+interface PersistentMark {
+    /**
+     * Returned by {@link #recovered()} when there was no previous incarnation, and by {@link #advance} when
+     * the timeout expired
+     */
+    long NONE = -1;
+
+    /**
+     * @return The second recorded by the previous incarnation, or {@link #NONE} for a new file
+     */
+    long recovered();
+
+    /**
+     * @return The time from which a new incarnation may issue ids without risking an overlap with ids issued
+     *         before the mark was opened
+     */
+    long resumeMillis();
+
+    /**
+     * Records that ids are about to be issued from <code>second</code>, waiting until that is safe but no longer
+     * than <code>timeoutNanos</code>.
+     * @return The last second from which ids may be issued before this has to be called again, or {@link #NONE}
+     *         if the timeout expired first
+     */
+    long advance(long second, long timeoutNanos);
+}
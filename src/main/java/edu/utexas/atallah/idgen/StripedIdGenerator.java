@@ -0,0 +1,112 @@
+package edu.utexas.atallah.idgen;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *
+ *  StripedIdGenerator
+ *
+ *  A generator that splits the serials of each tick into a power-of-two number of stripes, each
+ *  with its own counter on its own cache line.  Calling threads are routed to a stripe by a per-thread hash
+ *  probe and move to another stripe when theirs is exhausted for the current tick or when they lose a
+ *  compare-and-set race, so threads rarely write to the same word.  Because the stripe index is implied by
+ *  the serial range, ids from different stripes can never collide; unlike {@link LeasingIdGenerator} no
+ *  serials are set aside per thread, so the whole serial space of a tick remains usable.
+ *
+ *  Ids are unique and increase within a thread for a given stripe, but are not ordered across threads.
+ */
+public class StripedIdGenerator extends AbstractIdGenerator {
+    private static final int PADDING = 16;          // Longs per stripe so that each counter has its own cache line
+
+    private final int offsetBits;
+    private final long offsetMask;
+    private final int stripeMask;
+    private final int stripeBits;                   // log2 of the number of serials per stripe
+    private final long stripeSize;
+    // Per stripe: (tick << offsetBits) | next offset within the stripe's serial range
+    private final AtomicLongArray cells;
+    private final ThreadLocal<int[]> probes = ThreadLocal.withInitial(
+            () -> new int[] { mix((int) Thread.currentThread().getId()) });
+
+    StripedIdGenerator(long nodeId, NodeIdProvider nodeIdProvider, IdLayout layout, TimeSource clock, long maxLead,
+                       PersistentMark mark, int stripes) {
+        super(nodeId, nodeIdProvider, layout, clock, maxLead, mark);
+        if (stripes < 1 || stripes > serialsPerTick || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid stripe count %d (must be a power of 2)", stripes));
+        }
+        this.offsetBits = serialBits + 1;
+        this.offsetMask = (1L << offsetBits) - 1;
+        this.stripeMask = stripes - 1;
+        this.stripeBits = serialBits - Integer.numberOfTrailingZeros(stripes);
+        this.stripeSize = 1L << stripeBits;
+        this.cells = new AtomicLongArray((stripes + 1) * PADDING);
+        // Start with every stripe exhausted for the current tick (see AbstractIdGenerator)
+        long exhausted = initialTick << offsetBits | stripeSize;
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            cells.set((stripe + 1) * PADDING, exhausted);
+        }
+    }
+
+    @Override
+    long reserve(int count, long timeoutNanos) {
+        int[] probe = probes.get();
+        int exhausted = 0;
+        while (true) {
+            int stripe = probe[0] & stripeMask;
+            int index = (stripe + 1) * PADDING;
+            long current = cells.get(index);
+            long cellTick = current >>> offsetBits;
+            long currTick = currentTick();
+            long next;
+            if (currTick > cellTick) {
+                checkTime(currTick);
+                next = currTick << offsetBits;
+            } else if ((current & offsetMask) < stripeSize) {
+                // Never move a stripe backwards, even if the wall clock does
+                next = current;
+            } else if (exhausted < stripeMask) {
+                // Exhausted for this tick: step through the other stripes first
+                probe[0]++;
+                exhausted++;
+                continue;
+            } else if (cellTick + 1 - currTick <= maxLead) {
+                // All stripes are exhausted, but the next tick is within the lookahead
+                checkTime(cellTick + 1);
+                next = (cellTick + 1) << offsetBits;
+            } else {
+                timeoutNanos = awaitTick(cellTick + 1 - maxLead, timeoutNanos, "overflow");
+                if (timeoutNanos < 0) {
+                    return NONE;
+                }
+                exhausted = 0;
+                continue;
+            }
+            long granted = Math.min(count, stripeSize - (next & offsetMask));
+            if (cells.compareAndSet(index, current, next + granted)) {
+                return (next >>> offsetBits) << serialBits |
+                        (long) stripe << stripeBits |
+                        (next & offsetMask);
+            }
+            // Contended: try another stripe next time
+            probe[0] = mix(probe[0]);
+        }
+    }
+
+    @Override
+    int granted(long first, int count) {
+        return (int) Math.min(count, stripeSize - (first & (stripeSize - 1)));
+    }
+
+    public int stripes() {
+        return stripeMask + 1;
+    }
+
+    private static int mix(int probe) {
+        // Marsaglia xorshift, never returns zero for a non-zero input
+        probe ^= probe << 13;
+        probe ^= probe >>> 17;
+        probe ^= probe << 5;
+        return probe == 0 ? 0x9E3779B9 : probe;
+    }
+}
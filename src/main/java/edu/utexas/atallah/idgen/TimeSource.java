@@ -0,0 +1,28 @@
+package edu.utexas.atallah.idgen;
+
+/**
+ *
+ *  TimeSource
+ *
+ *  The clock a generator derives its ticks from, given to {@link IdGeneratorBuilder#clock(TimeSource)}.  A
+ *  generator reads it on every reservation, so its cost is part of the cost of every id.  Built-in sources:
+ *
+ *      {@link #SYSTEM}         The wall clock, read on every call
+ *      {@link MonotonicClock}  The wall clock at construction advanced by <code>System.nanoTime()</code>, so it
+ *                              never steps backwards (the default)
+ *      {@link CoarseClock}     The wall clock as last published by a ticker thread, a volatile read per call
+ *      {@link ManualClock}     A clock that only moves when told to, for tests and simulations
+ *
+ *  Whatever the source, uniqueness does not depend on it: a generator's state never moves backwards, so a
+ *  clock that lags or steps back only delays ids.  What the source must get right across restarts is that a
+ *  new incarnation of a node does not start out behind the time at which the previous one stopped.
+ */
+@FunctionalInterface
+public interface TimeSource {
+    TimeSource SYSTEM = System::currentTimeMillis;
+
+    /**
+     * @return The current time in msec since 1970-01-01T00:00Z
+     */
+    long currentTimeMillis();
+}
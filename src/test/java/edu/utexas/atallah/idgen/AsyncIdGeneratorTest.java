@@ -0,0 +1,139 @@
+package edu.utexas.atallah.idgen;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class AsyncIdGeneratorTest {
+    private static final long START = 1_600_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void completesAtNextTickTest() throws Exception {
+        AtomicLong now = new AtomicLong(START);
+        IdGenerator generator = IdGenerator.builder().nodeId(20)
+                .layout(IdLayout.milliseconds(10, 41, 8, 0)).clock(now::get).build();
+        now.incrementAndGet();
+        try (AsyncIdGenerator async = new AsyncIdGenerator(generator)) {
+            CompletableFuture<long[]> first = async.getIdsAsync(200);
+            assertTrue(first.isDone());
+
+            // Only 56 serials are left in this tick
+            CompletableFuture<long[]> second = async.getIdsAsync(100);
+            CompletableFuture<Long> third = async.getIdAsync();
+            assertFalse(second.isDone());
+            assertFalse(third.isDone());
+            assertEquals(2, async.pending());
+
+            now.incrementAndGet();
+            long[] ids = second.get(1, TimeUnit.SECONDS);
+            long id = third.get(1, TimeUnit.SECONDS);
+            assertEquals(START + 1, IdLayout.milliseconds(10, 41, 8, 0).timestampMillis(ids[55]));
+            assertEquals(START + 2, IdLayout.milliseconds(10, 41, 8, 0).timestampMillis(ids[56]));
+            assertEquals(ids[99] + 1, id);
+            assertEquals(100, Arrays.stream(ids).distinct().count());
+            assertEquals(0, async.pending());
+        }
+    }
+
+    @Test
+    public void closeFailsPendingTest() throws Exception {
+        AtomicLong now = new AtomicLong(START);
+        IdGenerator generator = IdGenerator.builder().nodeId(21).clock(now::get).build();
+        AsyncIdGenerator async = new AsyncIdGenerator(generator);
+        CompletableFuture<Long> future = async.getIdAsync();
+        try {
+            future.get(10, TimeUnit.MILLISECONDS);
+            fail("Construction second must be exhausted");
+        } catch (TimeoutException e) {
+            // Expected
+        }
+        async.close();
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("Pending request must fail on close");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void closeWhileQueueingTest() throws Exception {
+        // The generator's clock closes the front end between getIdsAsync's closed check and queueing
+        AtomicReference<AsyncIdGenerator> closing = new AtomicReference<>();
+        IdGenerator generator = IdGenerator.builder().nodeId(22).clock(() -> {
+            AsyncIdGenerator async = closing.getAndSet(null);
+            if (async != null) {
+                async.close();
+            }
+            return START;
+        }).build();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            AsyncIdGenerator async = new AsyncIdGenerator(generator, scheduler);
+            closing.set(async);
+            CompletableFuture<long[]> future = async.getIdsAsync(10);
+            try {
+                future.get(1, TimeUnit.SECONDS);
+                fail("Request queued after close must fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            assertEquals(0, async.pending());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void drainWaitsUntilReadyTest() throws Exception {
+        IdGenerator generator = HighWaterMarkTest.restartedBehindMark(folder.getRoot().toPath().resolve("mark"),
+                23, IdLayout.SNOWFLAKE);
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        try (AsyncIdGenerator async = new AsyncIdGenerator(generator, scheduler)) {
+            assertFalse(async.getIdAsync().isDone());
+            // One drain when the generator can issue again, not one per millisecond tick until then
+            assertEquals(1, scheduler.getQueue().size());
+            long delay = ((ScheduledFuture<?>) scheduler.getQueue().peek()).getDelay(TimeUnit.MILLISECONDS);
+            assertTrue(String.format("Drain in %d msec", delay), delay > 11_000);
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void disabledGeneratorTest() throws Exception {
+        ManualClock clock = new ManualClock(START);
+        IdGenerator generator = IdGenerator.builder().nodeId(24).clock(clock).build();
+        clock.advance(1, TimeUnit.SECONDS);
+        generator.disable("test");
+        try (AsyncIdGenerator async = new AsyncIdGenerator(generator)) {
+            // Serials are available, so the generator fails on the calling thread
+            CompletableFuture<long[]> future = async.getIdsAsync(10);
+            assertTrue(future.isDone());
+            try {
+                future.get();
+                fail("Disabled generator must fail the future");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            assertTrue(async.getIdAsync().isCompletedExceptionally());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package edu.utexas.atallah.idgen;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CoarseClockTest {
+    private static final Logger log = LoggerFactory.getLogger(CoarseClockTest.class);
+
+    @Test
+    public void tickerTest() throws InterruptedException {
+        try (CoarseClock clock = new CoarseClock(10, TimeUnit.MILLISECONDS)) {
+            long previous = clock.currentTimeMillis();
+            for (int i = 0; i < 20; i++) {
+                Thread.sleep(5);
+                long now = clock.currentTimeMillis();
+                assertTrue(now >= previous);
+                // Behind the system clock by no more than a period, allowing for scheduling delays
+                assertTrue(String.format("Lag of %d msec", System.currentTimeMillis() - now),
+                        System.currentTimeMillis() - now < 200);
+                previous = now;
+            }
+        }
+    }
+
+    @Test
+    public void laggingClockTest() {
+        // A coarse period relative to the 1 msec ticks, so most tick boundaries are seen late
+        IdLayout layout = IdLayout.milliseconds(10, 41, 8, 0);
+        try (CoarseClock clock = new CoarseClock(7, TimeUnit.MILLISECONDS)) {
+            IdGenerator generator = IdGenerator.builder().nodeId(30).layout(layout).clock(clock).build();
+            long previous = generator.getId();
+            for (int i = 0; i < 50_000; i++) {
+                long id = generator.getId();
+                assertTrue(String.format("IDs must increase, i=%d", i), id > previous);
+                previous = id;
+            }
+        }
+    }
+
+    @Test
+    public void rateComparisonTest() {
+        long count = 2_000_000;
+        // Enough serials per second that neither run waits for the clock, so only the cost of reading it differs
+        IdLayout layout = IdLayout.of(1, 32, 30);
+        IdGenerator system = IdGenerator.builder().nodeId(0).layout(layout).clock(TimeSource.SYSTEM).build();
+        try (CoarseClock clock = new CoarseClock()) {
+            IdGenerator coarse = IdGenerator.builder().nodeId(1).layout(layout).clock(clock).build();
+            // Warm up both paths (and wait out the construction second) before timing them
+            rate(system, count);
+            rate(coarse, count);
+            double systemRate = rate(system, count);
+            double coarseRate = rate(coarse, count);
+            log.info(String.format("System clock: %.0f ids/sec, coarse clock: %.0f ids/sec (%.1f ns/id saved)",
+                    systemRate, coarseRate, 1e9 / systemRate - 1e9 / coarseRate));
+            assertTrue(coarseRate > 100_000L);
+        }
+    }
+
+    private double rate(IdGenerator generator, long count) {
+        StopWatch stopWatch = StopWatch.createStarted();
+        long total = 0;         // Sum of IDs to ensure optimizer doesn't throw off results
+        for (long i = 0; i < count; i++) {
+            total += generator.getId();
+        }
+        long t = Math.max(stopWatch.getTime(TimeUnit.MILLISECONDS), 1);
+        log.debug("Elapsed time: {} total: {}", t, total);
+        return count / (double) t * 1000.0;
+    }
+}
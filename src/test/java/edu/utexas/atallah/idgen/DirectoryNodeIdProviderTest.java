@@ -0,0 +1,125 @@
+package edu.utexas.atallah.idgen;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DirectoryNodeIdProviderTest {
+    private static final IdLayout LAYOUT = IdLayout.of(2, 44, 17);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void distinctClaimsTest() {
+        Path dir = folder.getRoot().toPath();
+        DirectoryNodeIdProvider first = new DirectoryNodeIdProvider(dir);
+        try (DirectoryNodeIdProvider second = new DirectoryNodeIdProvider(dir)) {
+            try {
+                assertEquals(0, first.nodeId(LAYOUT));
+                assertEquals(1, second.nodeId(LAYOUT));
+                assertEquals(2, first.nodeId(LAYOUT));
+                assertEquals(3, second.nodeId(LAYOUT));
+                try {
+                    first.nodeId(LAYOUT);
+                    fail("All node ids of the layout are taken");
+                } catch (IllegalStateException e) {
+                    // Expected
+                }
+            } finally {
+                first.close();
+            }
+            // Released node ids can be claimed again
+            IdGenerator generator = IdGenerator.builder().nodeId(second).layout(LAYOUT).build();
+            assertEquals(0, generator.nodeId());
+        }
+    }
+
+    @Test
+    public void rangeTest() {
+        Path dir = folder.getRoot().toPath();
+        try (DirectoryNodeIdProvider provider = new DirectoryNodeIdProvider(dir, 2, 100)) {
+            assertEquals(2, provider.nodeId(LAYOUT));
+            assertEquals(3, provider.nodeId(LAYOUT));
+        }
+    }
+
+    @Test
+    public void otherProcessTest() throws IOException, InterruptedException {
+        Path dir = folder.getRoot().toPath();
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ClaimingProcess.class.getName(), dir.toString())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            assertEquals("0", output.readLine());
+            try (DirectoryNodeIdProvider provider = new DirectoryNodeIdProvider(dir)) {
+                assertEquals(1, provider.nodeId(LAYOUT));
+                // Once the other process is gone its node id is free again
+                process.getOutputStream().close();
+                assertTrue(process.waitFor(10, TimeUnit.SECONDS));
+                assertEquals(0, provider.nodeId(LAYOUT));
+            }
+        } finally {
+            process.destroy();
+        }
+    }
+
+    @Test
+    public void generatorKeepsClaimTest() throws IOException, InterruptedException {
+        Path dir = folder.getRoot().toPath();
+        IdGenerator generator = IdGenerator.builder().nodeId(new DirectoryNodeIdProvider(dir)).layout(LAYOUT).build();
+        assertEquals(0, generator.nodeId());
+        // Collect the unreferenced provider, if the generator did not keep it, and let its lock be released
+        WeakReference<Object> canary = new WeakReference<>(new Object());
+        while (canary.get() != null) {
+            System.gc();
+        }
+        System.gc();
+        Thread.sleep(200);
+        assertEquals("1", claimInOtherProcess(dir));
+        assertEquals(0, generator.nodeId());
+    }
+
+    private static String claimInOtherProcess(Path dir) throws IOException, InterruptedException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ClaimingProcess.class.getName(), dir.toString())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String nodeId = output.readLine();
+            process.getOutputStream().close();
+            assertTrue(process.waitFor(10, TimeUnit.SECONDS));
+            return nodeId;
+        } finally {
+            process.destroy();
+        }
+    }
+
+    /**
+     * Claims a node id, prints it, and holds it until its input is closed.
+     */
+    public static class ClaimingProcess {
+        public static void main(String[] args) throws IOException {
+            DirectoryNodeIdProvider provider = new DirectoryNodeIdProvider(new File(args[0]).toPath());
+            System.out.println(provider.nodeId(LAYOUT));
+            System.out.flush();
+            while (System.in.read() >= 0) {
+                // Wait for the parent to close our input
+            }
+        }
+    }
+}
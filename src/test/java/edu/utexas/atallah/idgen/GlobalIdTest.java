@@ -54,7 +54,7 @@ public class GlobalIdTest {
         log.info("Elapsed time: {}", t);
     }
     @Test
-    public void multiThreadedTest() {
+    public void multiThreadedTest() throws InterruptedException {
         GlobalId.init();
         Map<Long, Long> ids = new ConcurrentHashMap<>();
         ExecutorService executor = Executors.newFixedThreadPool(4);
@@ -72,7 +72,100 @@ public class GlobalIdTest {
 
             }
         });
+        // Other tests expect to be the only caller once this one is done
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
         long t = stopWatch.getTime(TimeUnit.MILLISECONDS);
         log.info("Elapsed time: {}", t);
     }
+    @Test
+    public void lockFreeContentionTest() throws InterruptedException {
+        GlobalId.init();
+        int threads = 8;
+        int perThread = 50_000;
+        long[][] results = new long[threads][perThread];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        StopWatch stopWatch = StopWatch.createStarted();
+        for (int t = 0; t < threads; t++) {
+            long[] dst = results[t];
+            executor.submit(() -> {
+                for (int i = 0; i < dst.length; i++) {
+                    dst[i] = GlobalId.getId();
+                }
+            });
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        log.info("Elapsed time: {}", stopWatch.getTime(TimeUnit.MILLISECONDS));
+
+        Set<Long> ids = new HashSet<>();
+        for (long[] dst : results) {
+            for (int i = 0; i < dst.length; i++) {
+                if (i > 0) {
+                    assertTrue("IDs must increase within a thread", dst[i] > dst[i - 1]);
+                }
+                if (!ids.add(dst[i])) {
+                    throw new IllegalStateException(String.format("Duplicate ID: %d (0x%x)", dst[i], dst[i]));
+                }
+            }
+        }
+        assertEquals(threads * perThread, ids.size());
+    }
+    @Test
+    public void serialResetsEachSecondTest() {
+        GlobalId.init();
+        long serialMask = (1L << 17) - 1;
+        long previous = GlobalId.getId();
+        int secondsSeen = 0;
+        while (secondsSeen < 2) {
+            long id = GlobalId.getId();
+            if (id >>> 17 != previous >>> 17) {
+                assertEquals("First serial of a new second", 0, id & serialMask);
+                secondsSeen++;
+            } else {
+                assertEquals((previous & serialMask) + 1, id & serialMask);
+            }
+            previous = id;
+        }
+    }
+    @Test
+    public void bulkCorrectnessTest() {
+        GlobalId.init();
+        long[] ids = new long[300_000];
+        StopWatch stopWatch = StopWatch.createStarted();
+        for (int off = 0; off < ids.length; off += 10_000) {
+            GlobalId.getIds(ids, off, 10_000);
+        }
+        long t = stopWatch.getTime(TimeUnit.MILLISECONDS);
+        log.info("Elapsed time: {}", t);
+        for (int i = 1; i < ids.length; i++) {
+            assertTrue(String.format("IDs must increase, i=%d", i), ids[i] > ids[i - 1]);
+        }
+        assertTrue(GlobalId.getId() > ids[ids.length - 1]);
+    }
+
+    @Test
+    public void repeatedInitTest() {
+        GlobalId.init();
+        StopWatch stopWatch = StopWatch.createStarted();
+        GlobalId.init();
+        GlobalId.getId();
+        long t = stopWatch.getTime(TimeUnit.MILLISECONDS);
+        // Only the first caller waits for the generator to come into service
+        assertTrue(String.format("Took %d msec", t), t < 100);
+        assertEquals(GlobalId.DEFAULT_NODE_ID, GlobalId.generator().layout().nodeId(GlobalId.getId()));
+    }
+
+    @Test
+    public void initWaitsUntilReadyTest() {
+        GlobalId.init();
+        // The wait happens in init, not in the class initializer, and leaves the generator ready
+        assertEquals(0, GlobalId.generator().nanosUntilReady());
+        assertNotEquals(IdGenerator.NO_ID, GlobalId.tryGetId());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void bulkBoundsTest() {
+        GlobalId.getIds(new long[10], 5, 6);
+    }
 }
@@ -0,0 +1,111 @@
+package edu.utexas.atallah.idgen;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HighWaterMarkTest {
+    private static final long START = 1_600_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void newFileTest() throws IOException, InterruptedException {
+        Path file = folder.getRoot().toPath().resolve("mark");
+        HighWaterMark mark = new HighWaterMark(file);
+        assertEquals(HighWaterMark.NONE, mark.recovered());
+        assertEquals(0, mark.resumeMillis());
+        mark.advance(100, AbstractIdGenerator.WAIT_FOREVER);
+        mark.advance(101, AbstractIdGenerator.WAIT_FOREVER);
+        // Entering a second only waits for the previous one to be durable
+        assertTrue(mark.durable() >= 100);
+        awaitDurable(file, 101);
+        assertEquals(103_000, new HighWaterMark(file).resumeMillis());
+    }
+
+    @Test
+    public void advanceTimeoutTest() throws InterruptedException {
+        HighWaterMark mark = new HighWaterMark(folder.getRoot().toPath().resolve("mark"));
+        mark.advance(100, AbstractIdGenerator.WAIT_FOREVER);
+        // After an idle gap the write of the new second is requested without waiting for it
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mark.advance(110, 0) == HighWaterMark.NONE && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(110, mark.durable());
+        assertEquals(111, mark.advance(111, 0));
+    }
+
+    @Test
+    public void restartAfterClockStepTest() throws IOException, InterruptedException {
+        Path file = folder.getRoot().toPath().resolve("mark");
+        ManualClock clock = new ManualClock(START);
+        IdGenerator first = IdGenerator.builder().nodeId(50).clock(clock).highWaterMark(file).build();
+        clock.advance(1, TimeUnit.SECONDS);
+        long[] ids = new long[1 << 17];
+        first.getIds(ids, 0, ids.length);
+        clock.advance(1, TimeUnit.SECONDS);
+        long last = first.getId();
+        assertEquals(START / 1000 + 2, IdLayout.DEFAULT.time(last));
+        awaitDurable(file, START / 1000 + 2);
+
+        // The node restarts after its clock has stepped back by 10 sec
+        clock.advance(-10, TimeUnit.SECONDS);
+        IdGenerator second = IdGenerator.builder().nodeId(50).clock(clock).highWaterMark(file).build();
+        assertEquals(IdGenerator.NO_ID, second.tryGetId());
+        clock.set(START + 3000);
+        // The recorded second and the one after it are never issued from again
+        assertEquals(IdGenerator.NO_ID, second.tryGetId());
+        clock.set(START + 4000);
+        long id = second.getId(5, TimeUnit.SECONDS);
+        assertEquals(START / 1000 + 4, IdLayout.DEFAULT.time(id));
+        assertTrue(id > last);
+    }
+
+    @Test
+    public void noWaitAfterMarkTest() {
+        Path file = folder.getRoot().toPath().resolve("mark");
+        ManualClock clock = new ManualClock(START);
+        IdGenerator first = IdGenerator.builder().nodeId(51).clock(clock).highWaterMark(file).build();
+        clock.advance(1, TimeUnit.SECONDS);
+        first.getId();
+        // The recorded second has long passed, so the restart is ready in its construction second
+        clock.advance(100, TimeUnit.SECONDS);
+        IdGenerator second = IdGenerator.builder().nodeId(51).clock(clock).highWaterMark(file).build();
+        assertEquals(0, second.nanosUntilReady());
+        long id = second.getId(5, TimeUnit.SECONDS);
+        assertEquals(START / 1000 + 101, IdLayout.DEFAULT.time(id));
+    }
+
+    /**
+     * @return A generator restarted from a mark in <code>file</code> that was recorded 10 sec ahead of its clock,
+     *         e.g. after the clock has stepped back, so that it cannot issue ids for 11 sec
+     */
+    static IdGenerator restartedBehindMark(Path file, long nodeId, IdLayout layout) throws IOException {
+        Files.write(file, ByteBuffer.allocate(Long.BYTES).putLong(0, START / 1000 + 10).array());
+        return IdGenerator.builder().nodeId(nodeId).layout(layout).clock(new ManualClock(START))
+                .highWaterMark(file).build();
+    }
+
+    private void awaitDurable(Path file, long second) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (read(file) < second && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(second, read(file));
+    }
+
+    private long read(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        return bytes.length < Long.BYTES ? HighWaterMark.NONE : ByteBuffer.wrap(bytes).getLong();
+    }
+}
@@ -0,0 +1,301 @@
+package edu.utexas.atallah.idgen;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.*;
+
+public class IdGeneratorTest {
+    private static final long START = 1_600_000_000_000L;
+
+    @Test
+    public void independentGeneratorsTest() {
+        AtomicLong now = new AtomicLong(START);
+        IdGenerator first = IdGenerator.builder().nodeId(5).clock(now::get).build();
+        IdGenerator second = IdGenerator.builder().nodeId(6).clock(now::get).build();
+        now.addAndGet(1000);
+        assertEquals(5, first.nodeId());
+        long a = first.getId();
+        long b = second.getId();
+        assertEquals(5, a >>> 53);
+        assertEquals(6, b >>> 53);
+        // Same second and serial, different node
+        assertEquals(a & ((1L << 53) - 1), b & ((1L << 53) - 1));
+    }
+
+    @Test
+    public void clockRolloverTest() {
+        AtomicLong now = new AtomicLong(START);
+        IdGenerator generator = IdGenerator.builder().nodeId(7).clock(now::get).build();
+        now.addAndGet(1000);
+        long[] ids = new long[1 << 17];
+        generator.getIds(ids, 0, ids.length);
+        assertEquals(START / 1000 + 1, IdLayout.DEFAULT.time(ids[0]));
+        assertEquals(START / 1000 + 1, IdLayout.DEFAULT.time(ids[ids.length - 1]));
+        assertEquals(ids.length - 1, ids[ids.length - 1] - ids[0]);
+
+        now.addAndGet(1000);
+        long id = generator.getId();
+        assertEquals(START / 1000 + 2, IdLayout.DEFAULT.time(id));
+        assertEquals(0, IdLayout.DEFAULT.serial(id));
+    }
+
+    @Test
+    public void stripedRangeTest() {
+        AtomicLong now = new AtomicLong(START + 1000);
+        IdGenerator generator = IdGenerator.builder().nodeId(8).clock(now::get).striped(4).build();
+        now.addAndGet(1000);
+        IdRange range = generator.reserveRange(100_000);
+        // A range never spans stripes
+        assertEquals(1 << 15, range.size());
+    }
+
+    @Test
+    public void borrowAheadTest() {
+        borrowAhead(IdGenerator.builder().nodeId(11));
+        borrowAhead(IdGenerator.builder().nodeId(12).striped(4));
+    }
+
+    private void borrowAhead(IdGeneratorBuilder builder) {
+        AtomicLong now = new AtomicLong(START);
+        IdGenerator generator = builder.clock(now::get).borrowAhead(2, TimeUnit.SECONDS).build();
+        now.addAndGet(5000);
+        // Three ticks worth of ids without the clock moving: the current one and two borrowed from the future
+        long[] ids = new long[3 << 17];
+        generator.getIds(ids, 0, ids.length);
+        assertEquals(START / 1000 + 5, IdLayout.DEFAULT.time(ids[0]));
+        assertEquals(START / 1000 + 7, IdLayout.DEFAULT.time(ids[ids.length - 1]));
+        assertEquals(ids.length, Arrays.stream(ids).distinct().count());
+
+        // Once the clock has caught up, ids follow it again
+        now.addAndGet(5000);
+        assertEquals(START / 1000 + 10, IdLayout.DEFAULT.time(generator.getId()));
+    }
+
+    @Test
+    public void borrowAheadRoundsUpTest() {
+        AtomicLong now = new AtomicLong(START);
+        IdGenerator generator = IdGenerator.builder().nodeId(17).clock(now::get)
+                .borrowAhead(500, TimeUnit.MILLISECONDS).build();
+        now.addAndGet(5000);
+        // Less than a tick still allows borrowing the next one
+        long[] ids = new long[3 << 17];
+        assertEquals(2 << 17, generator.tryGetIds(ids, 0, ids.length));
+        assertEquals(START / 1000 + 6, IdLayout.DEFAULT.time(ids[(2 << 17) - 1]));
+    }
+
+    @Test
+    public void borrowAheadRestartTest() {
+        AtomicLong now = new AtomicLong(START);
+        IdGenerator generator = IdGenerator.builder().nodeId(13).clock(now::get)
+                .borrowAhead(2, TimeUnit.SECONDS).build();
+        // Ready at the next second, from which it borrows
+        assertEquals(TimeUnit.SECONDS.toNanos(1), generator.nanosUntilReady());
+        now.addAndGet(1000);
+        assertEquals(0, generator.nanosUntilReady());
+        // A previous incarnation may have issued ids up to two seconds ahead of the clock
+        assertEquals(START / 1000 + 3, IdLayout.DEFAULT.time(generator.getId()));
+    }
+
+    @Test
+    public void tryGetIdTest() {
+        tryGetId(IdGenerator.builder().nodeId(14));
+        tryGetId(IdGenerator.builder().nodeId(15).striped(2));
+        tryGetId(IdGenerator.builder().nodeId(16).leasing(1000));
+    }
+
+    private void tryGetId(IdGeneratorBuilder builder) {
+        AtomicLong now = new AtomicLong(START);
+        IdGenerator generator = builder.clock(now::get).build();
+        assertEquals(IdGenerator.NO_ID, generator.tryGetId());
+        now.addAndGet(1000);
+        for (int i = 0; i < 1 << 17; i++) {
+            assertNotEquals(IdGenerator.NO_ID, generator.tryGetId());
+        }
+        assertEquals(IdGenerator.NO_ID, generator.tryGetId());
+
+        long start = System.nanoTime();
+        assertEquals(IdGenerator.NO_ID, generator.getId(50, TimeUnit.MILLISECONDS));
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(String.format("Waited %d msec", waited), waited >= 50 && waited < 500);
+
+        now.addAndGet(1000);
+        long id = generator.getId(50, TimeUnit.MILLISECONDS);
+        assertEquals(START / 1000 + 2, IdLayout.DEFAULT.time(id));
+    }
+
+    @Test
+    public void markTimeoutTest() {
+        // A mark whose writes do not complete until the test says so
+        AtomicBoolean durable = new AtomicBoolean();
+        PersistentMark mark = new PersistentMark() {
+            @Override
+            public long recovered() {
+                return NONE;
+            }
+
+            @Override
+            public long resumeMillis() {
+                return 0;
+            }
+
+            @Override
+            public long advance(long second, long timeoutNanos) {
+                if (!durable.get()) {
+                    LockSupport.parkNanos(Math.min(timeoutNanos, TimeUnit.SECONDS.toNanos(5)));
+                    return NONE;
+                }
+                return second;
+            }
+        };
+        AtomicLong now = new AtomicLong(START);
+        CasIdGenerator generator = new CasIdGenerator(26, NodeIdProvider.of(26), IdLayout.DEFAULT, now::get, 0, mark);
+        now.addAndGet(1000);
+        assertEquals(IdGenerator.NO_ID, generator.tryGetId());
+        long start = System.nanoTime();
+        assertEquals(IdGenerator.NO_ID, generator.getId(50, TimeUnit.MILLISECONDS));
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(String.format("Waited %d msec", waited), waited >= 50 && waited < 500);
+        assertNull(generator.reserveRange(10, 0));
+
+        // Serials reserved while the mark timed out were given back
+        durable.set(true);
+        long id = generator.tryGetId();
+        assertEquals(START / 1000 + 1, IdLayout.DEFAULT.time(id));
+        assertEquals(0, IdLayout.DEFAULT.serial(id));
+    }
+
+    @Test
+    public void startupLatencyTest() {
+        startupLatency(IdGenerator.builder().nodeId(24));
+        startupLatency(IdGenerator.builder().nodeId(25).layout(IdLayout.SNOWFLAKE));
+    }
+
+    private void startupLatency(IdGeneratorBuilder builder) {
+        long start = System.nanoTime();
+        IdGenerator generator = builder.build();
+        long bound = TimeUnit.MILLISECONDS.toNanos(generator.layout().tickMillis());
+        assertTrue(generator.nanosUntilReady() <= bound);
+        generator.getId();
+        long elapsed = System.nanoTime() - start;
+        // The first id only waits for the next tick boundary, allowing for scheduling delays
+        assertTrue(String.format("Took %d nsec", elapsed), elapsed < bound + TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(0, generator.nanosUntilReady());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missingNodeIdTest() {
+        IdGenerator.builder().build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidNodeIdTest() {
+        IdGenerator.builder().nodeId(1024).build();
+    }
+
+    @Test
+    public void overflowParksWithoutMonitorTest() throws InterruptedException {
+        overflowParksWithoutMonitor(IdGenerator.builder().nodeId(17));
+        overflowParksWithoutMonitor(IdGenerator.builder().nodeId(18).striped(2));
+    }
+
+    private void overflowParksWithoutMonitor(IdGeneratorBuilder builder) throws InterruptedException {
+        AtomicLong now = new AtomicLong(START);
+        IdGenerator generator = builder.clock(now::get).build();
+        // The construction second is exhausted, so the caller waits until the clock moves on.  Holding no
+        // monitor while parked is what lets a waiting virtual thread unmount instead of pinning its carrier
+        Thread waiter = new Thread(generator::getId);
+        waiter.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (LockSupport.getBlocker(waiter) != generator && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertSame(generator, LockSupport.getBlocker(waiter));
+        ThreadInfo info = ManagementFactory.getThreadMXBean()
+                .getThreadInfo(new long[] { waiter.getId() }, true, true)[0];
+        assertEquals(Thread.State.TIMED_WAITING, info.getThreadState());
+        assertEquals(0, info.getLockedMonitors().length);
+        assertEquals(0, info.getLockedSynchronizers().length);
+
+        now.addAndGet(1000);
+        waiter.join(5000);
+        assertFalse(waiter.isAlive());
+    }
+
+    /**
+     * Runs 100K virtual threads against a generator that makes nearly all of them wait for serials, and checks
+     * with Java Flight Recorder that none of them pinned its carrier thread while parked.  Virtual threads and
+     * the <code>jdk.VirtualThreadPinned</code> event need JDK 21, while this code base compiles for Java 8, so
+     * both are used reflectively and the test is skipped on older JDKs.
+     */
+    @Test
+    public void virtualThreadStressTest() throws Exception {
+        ExecutorService executor;
+        try {
+            executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            Assume.assumeTrue("Virtual threads need JDK 21", false);
+            return;
+        }
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.getConstructor().newInstance();
+        Object settings = recordingClass.getMethod("enable", String.class).invoke(recording, "jdk.VirtualThreadPinned");
+        // Record every pinned park, not only those of at least 20 msec
+        Class.forName("jdk.jfr.EventSettings").getMethod("withThreshold", Duration.class)
+                .invoke(settings, Duration.ZERO);
+        Path file = Files.createTempFile("idgen-pinning", ".jfr");
+        try {
+            recordingClass.getMethod("start").invoke(recording);
+            // 256 serials per msec, so nearly every one of the 100K callers hits overflow and parks
+            IdGenerator generator = IdGenerator.builder().nodeId(19)
+                    .layout(IdLayout.milliseconds(10, 41, 8, 0)).build();
+            int callers = 100_000;
+            List<Future<Long>> futures = new ArrayList<>(callers);
+            try {
+                for (int i = 0; i < callers; i++) {
+                    futures.add(executor.submit(() -> generator.getId()));
+                }
+                long[] ids = new long[callers];
+                for (int i = 0; i < callers; i++) {
+                    ids[i] = futures.get(i).get(30, TimeUnit.SECONDS);
+                }
+                assertEquals(callers, Arrays.stream(ids).distinct().count());
+            } finally {
+                executor.shutdownNow();
+            }
+            recordingClass.getMethod("stop").invoke(recording);
+            recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+
+            Method eventType = Class.forName("jdk.jfr.consumer.RecordedEvent").getMethod("getEventType");
+            Method name = Class.forName("jdk.jfr.EventType").getMethod("getName");
+            int pinned = 0;
+            for (Object event : (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile")
+                    .getMethod("readAllEvents", Path.class).invoke(null, file)) {
+                if ("jdk.VirtualThreadPinned".equals(name.invoke(eventType.invoke(event)))) {
+                    pinned++;
+                }
+            }
+            assertEquals("Virtual threads pinned while waiting for serials", 0, pinned);
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package edu.utexas.atallah.idgen;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class IdLayoutTest {
+    @Test
+    public void defaultLayoutTest() {
+        IdLayout layout = IdLayout.DEFAULT;
+        long id = layout.encode(1023, 1_600_000_000L, 12345);
+        assertEquals(1023L << 53 | 1_600_000_000L << 17 | 12345, id);
+        assertTrue(id > 0);
+        assertEquals(1023, layout.nodeId(id));
+        assertEquals(1_600_000_000L, layout.time(id));
+        assertEquals(12345, layout.serial(id));
+        assertEquals(1 << 17, layout.serialsPerTick());
+    }
+
+    @Test
+    public void customLayoutTest() {
+        IdLayout layout = IdLayout.of(6, 36, 21);
+        AtomicLong now = new AtomicLong(1_600_000_000_000L);
+        IdGenerator generator = IdGenerator.builder().nodeId(40).layout(layout).clock(now::get).build();
+        now.addAndGet(1000);
+        long[] ids = new long[1 << 21];
+        generator.getIds(ids, 0, ids.length);
+        assertEquals(40, layout.nodeId(ids[ids.length - 1]));
+        assertEquals(1_600_000_001L, layout.time(ids[ids.length - 1]));
+        assertEquals((1 << 21) - 1, layout.serial(ids[ids.length - 1]));
+    }
+
+    @Test
+    public void customEpochLayoutTest() {
+        IdLayout layout = IdLayout.EPOCH_2020;
+        ManualClock clock = new ManualClock(1_600_000_000_000L);
+        IdGenerator legacyGenerator = IdGenerator.builder().nodeId(7).clock(clock).build();
+        IdGenerator generator = IdGenerator.builder().nodeId(7).layout(layout).clock(clock).build();
+        clock.advance(1, TimeUnit.SECONDS);
+        long legacy = legacyGenerator.getId();
+        long[] ids = new long[1 << 21];
+        generator.getIds(ids, 0, ids.length);
+        assertEquals((1_600_000_001_000L - layout.epochMillis()) / 1000, layout.time(ids[0]));
+        assertEquals(1_600_000_001_000L, layout.timestampMillis(ids[ids.length - 1]));
+        assertEquals((1 << 21) - 1, layout.serial(ids[ids.length - 1]));
+        assertEquals(7, layout.nodeId(ids[ids.length - 1]));
+
+        // Ids issued with the default layout still decode with it
+        assertEquals(7, IdLayout.DEFAULT.nodeId(legacy));
+        assertEquals(1_600_000_001_000L, IdLayout.DEFAULT.timestampMillis(legacy));
+        assertEquals(0, IdLayout.DEFAULT.serial(legacy));
+    }
+
+    @Test
+    public void millisecondLayoutTest() {
+        IdLayout layout = IdLayout.SNOWFLAKE;
+        AtomicLong now = new AtomicLong(layout.epochMillis() + 86_400_000L);
+        IdGenerator generator = IdGenerator.builder().nodeId(9).layout(layout).clock(now::get).build();
+        now.incrementAndGet();
+        long[] ids = new long[4096];
+        generator.getIds(ids, 0, ids.length);
+        assertEquals(86_400_001L, layout.time(ids[4095]));
+        assertEquals(4095, layout.serial(ids[4095]));
+        assertEquals(now.get(), layout.timestampMillis(ids[0]));
+
+        now.incrementAndGet();
+        long id = generator.getId();
+        assertEquals(86_400_002L, layout.time(id));
+        assertEquals(0, layout.serial(id));
+    }
+
+    @Test
+    public void millisecondOverflowTest() {
+        // 256 serials per msec: exceeding them costs about a millisecond of waiting, not a second
+        IdLayout layout = IdLayout.milliseconds(10, 41, 8, IdLayout.SNOWFLAKE.epochMillis());
+        IdGenerator generator = IdGenerator.builder().nodeId(10).layout(layout).build();
+        generator.getId();
+        StopWatch stopWatch = StopWatch.createStarted();
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 50_000; i++) {
+            assertTrue(ids.add(generator.getId()));
+        }
+        long t = stopWatch.getTime(TimeUnit.MILLISECONDS);
+        assertTrue(String.format("Elapsed time: %d", t), t >= 50_000 / 256 - 1 && t < 1000);
+    }
+
+    @Test
+    public void unsignedLayoutTest() {
+        IdLayout layout = IdLayout.UNSIGNED;
+        long id = layout.encode(1023, 1_600_000_000L, 200_000);
+        assertEquals(1023L << 54 | 1_600_000_000L << 18 | 200_000, id);
+        assertTrue(id < 0);
+        assertEquals(1023, layout.nodeId(id));
+        assertEquals(1_600_000_000L, layout.time(id));
+        assertEquals(200_000, layout.serial(id));
+        assertEquals(1 << 18, layout.serialsPerTick());
+        assertEquals(Long.toUnsignedString(id), layout.toString(id));
+
+        // Odd ticks, including the highest one that may be issued
+        long odd = layout.encode(5, 1_600_000_001L, 7);
+        assertEquals(1_600_000_001L, layout.time(odd));
+        assertEquals(1_600_000_001_000L, layout.timestampMillis(odd));
+        long last = layout.encode(1023, layout.maxTime(), layout.maxSerial());
+        assertEquals(layout.maxTime(), layout.time(last));
+        assertEquals(1023, layout.nodeId(last));
+        assertTrue(layout.compare(layout.encode(511, 1_600_000_000L, 0), id) < 0);
+        assertTrue(IdLayout.DEFAULT.compare(IdLayout.DEFAULT.encode(511, 1_600_000_000L, 0), id) > 0);
+        assertNotEquals(IdLayout.of(10, 36, 17), IdLayout.unsigned(10, 36, 17));
+    }
+
+    @Test
+    public void unsignedGeneratorTest() {
+        IdLayout layout = IdLayout.UNSIGNED;
+        ManualClock clock = new ManualClock(1_600_000_000_000L);
+        IdGenerator generator = IdGenerator.builder().nodeId(1000).layout(layout).clock(clock).build();
+        clock.advance(1, TimeUnit.SECONDS);
+        long[] ids = new long[1 << 18];
+        generator.getIds(ids, 0, ids.length);
+        clock.advance(1, TimeUnit.SECONDS);
+        long next = generator.getId();
+        for (int i = 1; i < ids.length; i++) {
+            assertTrue(layout.compare(ids[i - 1], ids[i]) < 0);
+        }
+        assertTrue(layout.compare(ids[ids.length - 1], next) < 0);
+        assertEquals(1000, layout.nodeId(next));
+        assertEquals(1_600_000_002L, layout.time(next));
+        assertEquals(0, layout.serial(next));
+    }
+
+    @Test
+    public void unsignedLeasingTest() {
+        IdLayout layout = IdLayout.UNSIGNED;
+        ManualClock clock = new ManualClock(1_600_000_000_000L);
+        IdGenerator generator = IdGenerator.builder().nodeId(1000).layout(layout).clock(clock).leasing(1024).build();
+        clock.advance(1, TimeUnit.SECONDS);
+        // Consecutive ids of an odd tick come from the same block
+        long first = generator.getId();
+        long second = generator.getId();
+        assertEquals(1_600_000_001L, layout.time(first));
+        assertEquals(0, layout.serial(first));
+        assertEquals(1, layout.serial(second));
+    }
+
+    @Test
+    public void unsignedNoIdTest() {
+        // All 64 bits in use: the highest tick is never issued, so no id equals NO_ID
+        IdLayout layout = IdLayout.unsigned(20, 26, 18);
+        assertEquals((1L << 26) - 2, layout.maxTime());
+        assertEquals(IdGenerator.NO_ID, (1L << 20) - 1 << 44 | (1L << 26) - 1 << 18 | (1 << 18) - 1);
+        try {
+            layout.encode((1L << 20) - 1, (1L << 26) - 1, (1 << 18) - 1);
+            fail("The highest tick must be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void layoutSwitchTest() {
+        long safeMillis = 1_683_025_921_000L;           // 2023-05-02T11:12:01Z
+        assertTrue(IdLayout.EPOCH_2020.canSucceed(IdLayout.DEFAULT, safeMillis));
+        assertFalse(IdLayout.EPOCH_2020.canSucceed(IdLayout.DEFAULT, safeMillis - 1));
+        long lastOld = IdLayout.DEFAULT.encode(5, safeMillis / 1000, IdLayout.DEFAULT.maxSerial());
+        long firstNew = IdLayout.EPOCH_2020.encode(5, IdLayout.EPOCH_2020.tick(safeMillis), 0);
+        assertTrue(firstNew > lastOld);
+        lastOld = IdLayout.DEFAULT.encode(5, safeMillis / 1000 - 1, IdLayout.DEFAULT.maxSerial());
+        firstNew = IdLayout.EPOCH_2020.encode(5, IdLayout.EPOCH_2020.tick(safeMillis - 1000), 0);
+        assertTrue(firstNew < lastOld);
+
+        // An epoch close to the switch leaves the time field too small for years
+        long now = 1_800_000_000_000L;
+        assertFalse(IdLayout.seconds(10, 32, 21, now - 86_400_000L).canSucceed(IdLayout.DEFAULT, now));
+        assertTrue(IdLayout.SNOWFLAKE.canSucceed(IdLayout.DEFAULT, now));
+        // Node id fields in different places
+        assertFalse(IdLayout.of(6, 36, 21).canSucceed(IdLayout.DEFAULT, now));
+        // Before the epoch of the new layout, or with nothing issued yet by the previous one
+        assertFalse(IdLayout.EPOCH_2020.canSucceed(IdLayout.DEFAULT, IdLayout.EPOCH_2020.epochMillis() - 1));
+        assertTrue(IdLayout.DEFAULT.canSucceed(IdLayout.seconds(10, 36, 17, now), now - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyUnsignedBitsTest() {
+        IdLayout.unsigned(10, 36, 19);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unalignedEpochTest() {
+        // Ticks that straddle seconds would let a restart behind a persistent mark reissue ids
+        IdLayout.seconds(10, 36, 17, 500);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyBitsTest() {
+        IdLayout.of(10, 36, 18);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nodeIdOutOfRangeTest() {
+        IdGenerator.builder().nodeId(64).layout(IdLayout.of(6, 36, 21)).build();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void timeFieldExhaustedTest() {
+        IdGenerator.builder().nodeId(1).layout(IdLayout.of(10, 30, 17)).build();
+    }
+}
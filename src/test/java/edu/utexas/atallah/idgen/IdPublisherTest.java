@@ -0,0 +1,138 @@
+package edu.utexas.atallah.idgen;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class IdPublisherTest {
+    private static final long START = 1_600_000_000_000L;
+    private static final IdLayout LAYOUT = IdLayout.milliseconds(10, 41, 8, 0);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void demandAndPacingTest() throws InterruptedException {
+        AtomicLong now = new AtomicLong(START);
+        IdGenerator generator = IdGenerator.builder().nodeId(22).layout(LAYOUT).clock(now::get).build();
+        now.incrementAndGet();
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        new IdPublisher(generator, scheduler, 100).subscribe(subscriber);
+        // Like every other signal, onSubscribe is delivered on the scheduler
+        assertNotSame(Thread.currentThread(), subscriber.awaitSubscription());
+
+        subscriber.subscription.request(2);
+        assertEquals(100, subscriber.chunks.poll(1, TimeUnit.SECONDS).length);
+        assertEquals(100, subscriber.chunks.poll(1, TimeUnit.SECONDS).length);
+        // No demand, no chunks
+        assertNull(subscriber.chunks.poll(50, TimeUnit.MILLISECONDS));
+
+        subscriber.subscription.request(3);
+        long[] partial = subscriber.chunks.poll(1, TimeUnit.SECONDS);
+        assertEquals(56, partial.length);
+        // The tick's serials are used up until the clock moves on
+        assertNull(subscriber.chunks.poll(50, TimeUnit.MILLISECONDS));
+
+        now.incrementAndGet();
+        long[] next = subscriber.chunks.poll(1, TimeUnit.SECONDS);
+        assertEquals(100, next.length);
+        assertEquals(START + 2, LAYOUT.timestampMillis(next[0]));
+        assertEquals(0, LAYOUT.serial(next[0]));
+        assertEquals(100, subscriber.chunks.poll(1, TimeUnit.SECONDS).length);
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    public void resumesWhenReadyTest() throws Exception {
+        IdGenerator generator = HighWaterMarkTest.restartedBehindMark(folder.getRoot().toPath().resolve("mark"),
+                24, LAYOUT);
+        ScheduledThreadPoolExecutor pacer = new ScheduledThreadPoolExecutor(1);
+        try {
+            CollectingSubscriber subscriber = new CollectingSubscriber();
+            new IdPublisher(generator, pacer, 100).subscribe(subscriber);
+            subscriber.awaitSubscription();
+            subscriber.subscription.request(1);
+            // One retry when the generator can issue again, not one per millisecond tick until then
+            long deadline = System.currentTimeMillis() + 2000;
+            long delay = 0;
+            while (delay < 11_000 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+                ScheduledFuture<?> retry = (ScheduledFuture<?>) pacer.getQueue().peek();
+                delay = retry == null ? 0 : retry.getDelay(TimeUnit.MILLISECONDS);
+            }
+            assertTrue(String.format("Retry in %d msec", delay), delay >= 11_000);
+            assertTrue(subscriber.chunks.isEmpty());
+        } finally {
+            pacer.shutdownNow();
+        }
+    }
+
+    @Test
+    public void invalidDemandTest() throws Exception {
+        IdGenerator generator = IdGenerator.builder().nodeId(23).build();
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        new IdPublisher(generator, scheduler, 10).subscribe(subscriber);
+        subscriber.awaitSubscription();
+        subscriber.subscription.request(0);
+        // The single scheduler thread has delivered the error once a later task has run
+        scheduler.submit(() -> { }).get();
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    private static class CollectingSubscriber implements IdPublisher.Subscriber {
+        final BlockingQueue<long[]> chunks = new LinkedBlockingQueue<>();
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        volatile IdPublisher.Subscription subscription;
+        volatile Thread subscribedOn;
+        volatile Throwable error;
+
+        @Override
+        public void onSubscribe(IdPublisher.Subscription subscription) {
+            this.subscription = subscription;
+            subscribedOn = Thread.currentThread();
+            subscribed.countDown();
+        }
+
+        /**
+         * @return The thread onSubscribe was delivered on
+         */
+        Thread awaitSubscription() throws InterruptedException {
+            assertTrue("Subscribed", subscribed.await(1, TimeUnit.SECONDS));
+            return subscribedOn;
+        }
+
+        @Override
+        public void onNext(long[] ids) {
+            chunks.add(ids);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
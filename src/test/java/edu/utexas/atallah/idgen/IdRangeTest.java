@@ -0,0 +1,42 @@
+package edu.utexas.atallah.idgen;
+
+import org.junit.Test;
+
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.*;
+
+public class IdRangeTest {
+    @Test
+    public void iterationTest() {
+        IdRange range = new IdRange(1000, 3);
+        assertEquals(1002, range.last());
+        assertTrue(range.contains(1001));
+        assertFalse(range.contains(1003));
+        assertFalse(range.contains(999));
+        assertEquals(1000, range.nextLong());
+        assertEquals(1001, range.nextLong());
+        assertEquals(1, range.remaining());
+        assertEquals(1002, range.nextLong());
+        assertFalse(range.hasNext());
+        assertEquals(3003, range.stream().sum());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void exhaustedTest() {
+        IdRange range = new IdRange(1000, 1);
+        range.nextLong();
+        range.nextLong();
+    }
+
+    @Test
+    public void reserveRangeTest() {
+        GlobalId.init();
+        IdRange range = GlobalId.reserveRange(10_000);
+        assertTrue(range.size() > 0 && range.size() <= 10_000);
+        assertEquals(range.first() >>> 17, range.last() >>> 17);
+        IdRange next = GlobalId.reserveRange(1);
+        assertTrue(next.first() > range.last());
+        assertTrue(GlobalId.getId() > next.first());
+    }
+}
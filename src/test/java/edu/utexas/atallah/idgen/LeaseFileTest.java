@@ -0,0 +1,112 @@
+package edu.utexas.atallah.idgen;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LeaseFileTest {
+    private static final long START = 1_600_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void extensionTest() throws IOException, InterruptedException {
+        Path file = folder.getRoot().toPath().resolve("lease");
+        LeaseFile lease = new LeaseFile(file, 10);
+        assertEquals(LeaseFile.NONE, lease.recovered());
+        assertEquals(0, lease.resumeMillis());
+
+        // The first second waits for the initial lease, after which the next four need no call at all
+        assertEquals(105, lease.advance(100, AbstractIdGenerator.WAIT_FOREVER));
+        assertEquals(110, read(file));
+        // The second half of the lease extends it in the background without waiting
+        assertEquals(110, lease.advance(106, AbstractIdGenerator.WAIT_FOREVER));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (lease.leased() < 116 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(116, read(file));
+        assertEquals(111, lease.advance(110, AbstractIdGenerator.WAIT_FOREVER));
+        assertEquals(117_000, new LeaseFile(file, 10).resumeMillis());
+    }
+
+    @Test
+    public void advanceTimeoutTest() throws InterruptedException {
+        LeaseFile lease = new LeaseFile(folder.getRoot().toPath().resolve("lease"), 10);
+        // The initial lease is requested without waiting for it
+        long deadline = System.currentTimeMillis() + 5000;
+        long last;
+        while ((last = lease.advance(100, 0)) == LeaseFile.NONE && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(105, last);
+        assertEquals(110, lease.leased());
+    }
+
+    @Test
+    public void extensionBehindWaiterTest() {
+        LeaseFile lease = new LeaseFile(folder.getRoot().toPath().resolve("lease"), 2);
+        assertEquals(101, lease.advance(100, AbstractIdGenerator.WAIT_FOREVER));
+        // Starts an extension up to second 104 without waiting for it
+        assertEquals(102, lease.advance(102, AbstractIdGenerator.WAIT_FOREVER));
+        // A jump past that extension is not left waiting once it finishes short of the second
+        assertEquals(201, lease.advance(200, TimeUnit.SECONDS.toNanos(5)));
+        assertEquals(202, lease.leased());
+    }
+
+    @Test
+    public void restartTest() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("lease");
+        ManualClock clock = new ManualClock(START);
+        IdGenerator first = IdGenerator.builder().nodeId(60).clock(clock)
+                .leaseAhead(file, 5, TimeUnit.SECONDS).build();
+        clock.advance(1, TimeUnit.SECONDS);
+        long last = first.getId();
+        assertEquals(START / 1000 + 6, read(file));
+
+        // A node restarted within the lease waits for its clock to pass the lease
+        IdGenerator second = IdGenerator.builder().nodeId(60).clock(clock)
+                .leaseAhead(file, 5, TimeUnit.SECONDS).build();
+        clock.set(START + 6000);
+        assertEquals(IdGenerator.NO_ID, second.tryGetId());
+        clock.set(START + 7000);
+        long id = second.getId(5, TimeUnit.SECONDS);
+        assertEquals(START / 1000 + 7, IdLayout.DEFAULT.time(id));
+        assertTrue(id > last);
+        assertEquals(START / 1000 + 12, read(file));
+    }
+
+    @Test
+    public void expiredLeaseTest() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("lease");
+        ManualClock clock = new ManualClock(START);
+        IdGenerator first = IdGenerator.builder().nodeId(61).clock(clock)
+                .leaseAhead(file, 5, TimeUnit.SECONDS).build();
+        clock.advance(1, TimeUnit.SECONDS);
+        first.getId();
+        assertEquals(START / 1000 + 6, read(file));
+
+        // Nothing of the expired lease lies ahead of the clock, so the restart needs no startup wait; its first
+        // id only waits for the lease to be extended over its second
+        clock.advance(100, TimeUnit.SECONDS);
+        IdGenerator second = IdGenerator.builder().nodeId(61).clock(clock)
+                .leaseAhead(file, 5, TimeUnit.SECONDS).build();
+        assertEquals(0, second.nanosUntilReady());
+        long id = second.getId(5, TimeUnit.SECONDS);
+        assertEquals(START / 1000 + 101, IdLayout.DEFAULT.time(id));
+        assertEquals(START / 1000 + 106, read(file));
+    }
+
+    private long read(Path file) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(file)).getLong();
+    }
+}
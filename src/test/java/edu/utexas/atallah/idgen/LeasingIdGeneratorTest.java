@@ -0,0 +1,76 @@
+package edu.utexas.atallah.idgen;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LeasingIdGeneratorTest {
+    @Test
+    public void multiThreadedLeasingTest() throws InterruptedException {
+        IdGenerator generator = IdGenerator.builder().nodeId(3).leasing(256).build();
+        int threads = 8;
+        long[][] results = new long[threads][40_000];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            long[] dst = results[t];
+            executor.submit(() -> {
+                for (int i = 0; i < dst.length; i++) {
+                    dst[i] = generator.getId();
+                }
+                generator.release();
+            });
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        Set<Long> ids = new HashSet<>();
+        for (long[] dst : results) {
+            for (long id : dst) {
+                if (!ids.add(id)) {
+                    throw new IllegalStateException(String.format("Duplicate ID: %d (0x%x)", id, id));
+                }
+            }
+        }
+        assertEquals(threads * 40_000, ids.size());
+    }
+
+    @Test
+    public void releaseReturnsUnusedTailTest() {
+        CasIdGenerator shared = new CasIdGenerator(4, NodeIdProvider.of(4), IdLayout.DEFAULT, TimeSource.SYSTEM, 0,
+                null);
+        LeasingIdGenerator generator = new LeasingIdGenerator(shared, 1000);
+        long first = generator.getId();
+        long second = generator.getId();
+        generator.release();
+        long next = shared.getId();
+        // Unless the second rolled over in between, the tail of the block is issued again
+        assertTrue(next == second + 1 ||
+                IdLayout.DEFAULT.time(next) > IdLayout.DEFAULT.time(first));
+    }
+
+    @Test
+    public void borrowAheadLeasingTest() {
+        ManualClock clock = new ManualClock(1_600_000_000_000L);
+        IdGenerator generator = IdGenerator.builder().nodeId(5).clock(clock)
+                .borrowAhead(2, TimeUnit.SECONDS).leasing(1024).build();
+        clock.advance(5, TimeUnit.SECONDS);
+        // Blocks borrowed from future ticks are used up rather than leased again on every call
+        int issued = 0;
+        while (generator.tryGetId() != IdGenerator.NO_ID) {
+            issued++;
+        }
+        assertEquals(3 << 17, issued);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroBlockSizeTest() {
+        IdGenerator.builder().nodeId(6).leasing(0);
+    }
+}
@@ -0,0 +1,91 @@
+package edu.utexas.atallah.idgen;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class NodeIdConflictDetectorTest {
+    @Test
+    public void conflictTest() throws Exception {
+        List<InetSocketAddress> addresses = Arrays.asList(freeAddress(), freeAddress(), freeAddress());
+        IdGenerator first = IdGenerator.builder().nodeId(70).build();
+        IdGenerator second = IdGenerator.builder().nodeId(71).leasing().build();
+        first.getId();
+        second.getId();
+        try (NodeIdConflictDetector a = detector(first, addresses, 0);
+             NodeIdConflictDetector b = detector(second, addresses, 1)) {
+            // Distinct node ids, including each detector hearing its own heartbeats
+            Thread.sleep(200);
+            assertNull(a.conflict());
+            assertNull(b.conflict());
+            first.getId();
+            second.getId();
+
+            // A second generator with node id 71 comes up
+            IdGenerator duplicate = IdGenerator.builder().nodeId(71).build();
+            try (NodeIdConflictDetector c = detector(duplicate, addresses, 2)) {
+                long deadline = System.currentTimeMillis() + 5000;
+                while ((b.conflict() == null || c.conflict() == null) && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(5);
+                }
+                assertEquals(addresses.get(2), b.conflict());
+                assertEquals(addresses.get(1), c.conflict());
+                assertNull(a.conflict());
+                first.getId();
+                assertFails(second);
+                assertFails(duplicate);
+            }
+        }
+    }
+
+    @Test
+    public void receiveErrorBackoffTest() throws Exception {
+        AtomicInteger receives = new AtomicInteger();
+        DatagramSocket socket = new DatagramSocket(freeAddress()) {
+            @Override
+            public void receive(DatagramPacket p) throws IOException {
+                receives.incrementAndGet();
+                throw new IOException("Simulated receive failure");
+            }
+        };
+        IdGenerator generator = IdGenerator.builder().nodeId(72).build();
+        try (NodeIdConflictDetector detector = new NodeIdConflictDetector(generator, socket,
+                Collections.<InetSocketAddress>emptyList(), 1, TimeUnit.SECONDS)) {
+            Thread.sleep(500);
+            // 10, 20, 40, 80, 160 and 320 msec of backoff fill the first 630 msec
+            assertTrue(String.format("%d receives", receives.get()), receives.get() <= 7);
+            assertNull(detector.conflict());
+        }
+    }
+
+    private NodeIdConflictDetector detector(IdGenerator generator, List<InetSocketAddress> addresses, int index) {
+        return new NodeIdConflictDetector(generator, addresses.get(index), addresses, 20, TimeUnit.MILLISECONDS);
+    }
+
+    private void assertFails(IdGenerator generator) {
+        try {
+            generator.getId();
+            fail("Generator must be disabled");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("is also in use"));
+        }
+    }
+
+    private static InetSocketAddress freeAddress() throws SocketException {
+        try (DatagramSocket socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            return (InetSocketAddress) socket.getLocalSocketAddress();
+        }
+    }
+}
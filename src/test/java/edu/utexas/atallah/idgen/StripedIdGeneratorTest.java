@@ -0,0 +1,73 @@
+package edu.utexas.atallah.idgen;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StripedIdGeneratorTest {
+    private static final Logger log = LoggerFactory.getLogger(StripedIdGeneratorTest.class);
+
+    @Test
+    public void stripeExhaustionTest() {
+        // A single thread has to walk through all stripes to use up a second's serials
+        IdGenerator generator = IdGenerator.builder().nodeId(1).striped(8).build();
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            long id = generator.getId();
+            if (!ids.add(id)) {
+                throw new IllegalStateException(String.format("Duplicate ID: %d (0x%x), i=%d", id, id, i));
+            }
+        }
+    }
+
+    @Test
+    public void multiThreadedStripedTest() throws InterruptedException {
+        IdGenerator generator = IdGenerator.builder().nodeId(2).striped(16).build();
+        int threads = 8;
+        long[][] results = new long[threads][50_000];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        StopWatch stopWatch = StopWatch.createStarted();
+        for (int t = 0; t < threads; t++) {
+            long[] dst = results[t];
+            executor.submit(() -> {
+                for (int i = 0; i < dst.length; i++) {
+                    dst[i] = generator.getId();
+                }
+            });
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        log.info("Elapsed time: {}", stopWatch.getTime(TimeUnit.MILLISECONDS));
+
+        Set<Long> ids = new HashSet<>();
+        for (long[] dst : results) {
+            for (long id : dst) {
+                assertEquals(2, id >>> 53);
+                if (!ids.add(id)) {
+                    throw new IllegalStateException(String.format("Duplicate ID: %d (0x%x)", id, id));
+                }
+            }
+        }
+        assertEquals(threads * 50_000, ids.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stripeCountTest() {
+        IdGenerator.builder().nodeId(1).striped(6).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroStripesTest() {
+        IdGenerator.builder().nodeId(1).striped(0);
+    }
+}
@@ -0,0 +1,111 @@
+package edu.utexas.atallah.idgen;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class TimeSourceTest {
+    private static final long START = 1_600_000_000_000L;
+
+    @Test
+    public void defaultClockTest() {
+        AbstractIdGenerator first = (AbstractIdGenerator) IdGenerator.builder().nodeId(40).build();
+        AbstractIdGenerator second = (AbstractIdGenerator) IdGenerator.builder().nodeId(41).build();
+        assertTrue(first.clock() instanceof MonotonicClock);
+        assertNotSame(first.clock(), second.clock());
+    }
+
+    @Test
+    public void manualClockRolloverTest() {
+        ManualClock clock = new ManualClock(START);
+        IdGenerator generator = IdGenerator.builder().nodeId(40).clock(clock).build();
+        assertEquals(IdGenerator.NO_ID, generator.tryGetId());
+
+        clock.advance(1, TimeUnit.SECONDS);
+        long[] ids = new long[1 << 17];
+        assertEquals(ids.length, generator.tryGetIds(ids, 0, ids.length));
+        assertEquals(IdGenerator.NO_ID, generator.tryGetId());
+
+        clock.advance(1, TimeUnit.SECONDS);
+        long id = generator.tryGetId();
+        assertEquals(START / 1000 + 2, IdLayout.DEFAULT.time(id));
+        assertEquals(0, IdLayout.DEFAULT.serial(id));
+    }
+
+    @Test
+    public void manualClockStepBackTest() {
+        ManualClock clock = new ManualClock(START);
+        IdGenerator generator = IdGenerator.builder().nodeId(41).clock(clock).build();
+        clock.advance(2, TimeUnit.SECONDS);
+        long before = generator.getId();
+        clock.set(START - 5000);
+        // The generator stays in the latest second it issued from
+        long after = generator.getId();
+        assertEquals(before + 1, after);
+    }
+
+    @Test
+    public void monotonicClockTest() {
+        MonotonicClock clock = new MonotonicClock();
+        long previous = clock.currentTimeMillis();
+        assertTrue(Math.abs(System.currentTimeMillis() - previous) < 100);
+        for (int i = 0; i < 100_000; i++) {
+            long now = clock.currentTimeMillis();
+            assertTrue(now >= previous);
+            previous = now;
+        }
+    }
+
+    @Test
+    public void monotonicClockResyncTest() {
+        ManualClock wall = new ManualClock(START);
+        AtomicLong nanos = new AtomicLong();
+        MonotonicClock clock = new MonotonicClock(wall, nanos::get, TimeUnit.SECONDS.toNanos(1));
+        assertEquals(START, clock.currentTimeMillis());
+
+        // A forward step is picked up at the next re-sync
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        wall.advance(500 + 3000, TimeUnit.MILLISECONDS);
+        assertEquals(START + 500, clock.currentTimeMillis());
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        wall.advance(500, TimeUnit.MILLISECONDS);
+        assertEquals(START + 4000, clock.currentTimeMillis());
+
+        // A step back of 2 sec slows the clock to half speed until the wall clock has caught up
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        wall.advance(1000 - 2000, TimeUnit.MILLISECONDS);
+        assertEquals(START + 5000, clock.currentTimeMillis());
+        for (int i = 1; i <= 4; i++) {
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+            wall.advance(1000, TimeUnit.MILLISECONDS);
+            assertEquals(START + 5000 + i * 500, clock.currentTimeMillis());
+        }
+        assertEquals(wall.currentTimeMillis(), clock.currentTimeMillis());
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        wall.advance(1000, TimeUnit.MILLISECONDS);
+        assertEquals(wall.currentTimeMillis(), clock.currentTimeMillis());
+    }
+
+    @Test
+    public void clockStepBackDoesNotStallTest() {
+        ManualClock wall = new ManualClock(START);
+        AtomicLong nanos = new AtomicLong();
+        MonotonicClock clock = new MonotonicClock(wall, nanos::get, TimeUnit.SECONDS.toNanos(1));
+        IdGenerator generator = IdGenerator.builder().nodeId(42).clock(clock).build();
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        wall.advance(1, TimeUnit.SECONDS);
+        long[] ids = new long[1 << 17];
+        generator.getIds(ids, 0, ids.length);
+
+        // The wall clock steps back by 10 sec; a second later the next second opens regardless
+        wall.advance(-10, TimeUnit.SECONDS);
+        assertEquals(IdGenerator.NO_ID, generator.tryGetId());
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        wall.advance(1, TimeUnit.SECONDS);
+        long id = generator.tryGetId();
+        assertEquals(START / 1000 + 2, IdLayout.DEFAULT.time(id));
+    }
+}